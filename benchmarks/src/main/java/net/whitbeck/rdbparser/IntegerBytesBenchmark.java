@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the integer formatting of {@link IntegerBytes} against the
+ * String.valueOf(...).getBytes() baseline of version 2.2.0, on small integers such as ziplist
+ * immediates, on 32-bit integers, and on 64-bit integers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IntegerBytesBenchmark {
+
+  private static final Charset ASCII = Charset.forName("ASCII");
+
+  @Param({"small", "int", "long"})
+  public String range;
+
+  private final long[] values = new long[1024];
+  private int idx = 0;
+
+  @Setup
+  public void setup() {
+    Random rand = new Random(42);
+    for (int i = 0; i < values.length; ++i) {
+      if ("small".equals(range)) {
+        values[i] = rand.nextInt(128);
+      } else if ("int".equals(range)) {
+        values[i] = rand.nextInt();
+      } else {
+        values[i] = rand.nextLong();
+      }
+    }
+  }
+
+  private long nextValue() {
+    idx = (idx + 1) & (values.length - 1);
+    return values[idx];
+  }
+
+  @Benchmark
+  public byte[] format() {
+    return IntegerBytes.format(nextValue());
+  }
+
+  @Benchmark
+  public byte[] baselineFormat() {
+    return String.valueOf(nextValue()).getBytes(ASCII);
+  }
+}
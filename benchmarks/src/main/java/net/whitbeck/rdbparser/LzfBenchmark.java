@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the LZF expansion of {@link Lzf} against the byte-at-a-time baseline of
+ * {@link BaselineLzf}, on compressible text and on long runs, which exercise the literal copies and
+ * the overlapping back references respectively.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LzfBenchmark {
+
+  @Param({"text", "runs"})
+  public String input;
+
+  @Param({"1024", "65536"})
+  public int size;
+
+  private byte[] compressed;
+  private byte[] dest;
+
+  @Setup
+  public void setup() {
+    byte[] data = "text".equals(input) ? text(size) : runs(size);
+    compressed = compress(data);
+    dest = new byte[size];
+    Lzf.expand(compressed, dest);
+    if (!Arrays.equals(data, dest)) {
+      throw new IllegalStateException("Lzf did not expand to the original data.");
+    }
+    BaselineLzf.expand(compressed, dest);
+    if (!Arrays.equals(data, dest)) {
+      throw new IllegalStateException("BaselineLzf did not expand to the original data.");
+    }
+  }
+
+  @Benchmark
+  public byte[] expand() {
+    Lzf.expand(compressed, dest);
+    return dest;
+  }
+
+  @Benchmark
+  public byte[] baselineExpand() {
+    BaselineLzf.expand(compressed, dest);
+    return dest;
+  }
+
+  // Words drawn from a small vocabulary, which compress to a mix of literals and back references.
+  private static byte[] text(int size) {
+    String[] words = {"redis", "key", "value", "hash", "field", "list", "set", "expire", "user:",
+                      "session", "0", "1", "2", "42", "1024", "true", "false", ":", ",", " "};
+    Random rand = new Random(42);
+    byte[] data = new byte[size];
+    int pos = 0;
+    while (pos < size) {
+      byte[] word = words[rand.nextInt(words.length)].getBytes();
+      int n = Math.min(word.length, size - pos);
+      System.arraycopy(word, 0, data, pos, n);
+      pos += n;
+    }
+    return data;
+  }
+
+  // Runs of a repeated byte or short pattern, which compress to long overlapping back references.
+  private static byte[] runs(int size) {
+    Random rand = new Random(42);
+    byte[] data = new byte[size];
+    int pos = 0;
+    while (pos < size) {
+      int period = 1 + rand.nextInt(4);
+      int len = Math.min(period + rand.nextInt(512), size - pos);
+      for (int i = 0; i < len; ++i) {
+        data[pos + i] = i < period ? (byte)rand.nextInt(256) : data[pos + i - period];
+      }
+      pos += len;
+    }
+    return data;
+  }
+
+  // A greedy LZF compressor, producing the format of lzf_compress in liblzf, which Redis uses.
+  static byte[] compress(byte[] in) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int[] table = new int[1 << 14];
+    Arrays.fill(table, -1);
+    int pos = 0;
+    int literalStart = 0;
+    while (pos + 2 < in.length) {
+      int hash = ((in[pos] & 0xff) << 16 | (in[pos + 1] & 0xff) << 8 | (in[pos + 2] & 0xff))
+          * 0x9e3779b1 >>> 18;
+      int ref = table[hash];
+      table[hash] = pos;
+      int offset = pos - ref - 1;
+      if (ref < 0 || offset >= 1 << 13 || in[ref] != in[pos] || in[ref + 1] != in[pos + 1]
+          || in[ref + 2] != in[pos + 2]) {
+        pos += 1;
+        continue;
+      }
+      int len = 3;
+      int maxLen = Math.min(in.length - pos, 7 + 255 + 2);
+      while (len < maxLen && in[ref + len] == in[pos + len]) {
+        len += 1;
+      }
+      writeLiterals(out, in, literalStart, pos);
+      if (len - 2 < 7) {
+        out.write((len - 2) << 5 | offset >> 8);
+      } else {
+        out.write(7 << 5 | offset >> 8);
+        out.write(len - 2 - 7);
+      }
+      out.write(offset & 0xff);
+      pos += len;
+      literalStart = pos;
+    }
+    writeLiterals(out, in, literalStart, in.length);
+    return out.toByteArray();
+  }
+
+  private static void writeLiterals(ByteArrayOutputStream out, byte[] in, int start, int end) {
+    while (start < end) {
+      int n = Math.min(32, end - start);
+      out.write(n - 1);
+      out.write(in, start, n);
+      start += n;
+    }
+  }
+}
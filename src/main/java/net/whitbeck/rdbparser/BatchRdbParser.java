@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Parses many RDB files concurrently, e.g., the dumps of all the shards of a deployment.
+ *
+ * <p>Each file is parsed on its own thread by an {@link RdbFileTask}, which is handed the file's
+ * {@link RdbHeader} as soon as it has been read, together with a parser positioned right after
+ * it. On Java 21 and later, files are parsed on virtual threads. On earlier versions, they are
+ * parsed on a pool of platform threads. In both cases, the number of files parsed at the same time
+ * can be bounded.
+ *
+ * <p>Failures are isolated per file: an exception thrown while parsing a file, whether by the
+ * parser or by the task, is recorded in that file's {@link RdbFileResult} and does not interrupt
+ * the other files.
+ *
+ * <p>A BatchRdbParser can run any number of batches, including concurrently. Closing it shuts down
+ * its threads and cancels the files of the running batches that have not completed yet.
+ *
+ * @author John Whitbeck
+ */
+public final class BatchRdbParser implements AutoCloseable {
+
+  private final ExecutorService executor;
+  private final Semaphore permits;
+  // The files of all running batches, such that closing the batch parser can cancel them. Shutting
+  // down the executor alone would leave the files still queued on it pending forever.
+  private final Set<Future<?>> running =
+      Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
+  private volatile boolean closed = false;
+
+  /**
+   * Creates a batch parser. With virtual threads, all the files of a batch are parsed at the same
+   * time. Otherwise, as many files as there are available processors are parsed at the same time.
+   */
+  public BatchRdbParser() {
+    this(0);
+  }
+
+  /**
+   * Creates a batch parser that parses at most {@code maxConcurrency} files at the same time.
+   *
+   * @param maxConcurrency the maximum number of files parsed at the same time
+   */
+  public BatchRdbParser(int maxConcurrency) {
+    if (maxConcurrency < 0) {
+      throw new IllegalArgumentException("Maximum concurrency cannot be negative.");
+    }
+    ExecutorService virtualThreads = newVirtualThreadExecutor();
+    if (virtualThreads != null) {
+      this.executor = virtualThreads;
+      this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+    } else {
+      int numThreads = maxConcurrency > 0
+          ? maxConcurrency : Runtime.getRuntime().availableProcessors();
+      this.executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "rdb-batch-parser-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+          }
+        });
+      this.permits = null;
+    }
+  }
+
+  private static ExecutorService newVirtualThreadExecutor() {
+    // Looked up reflectively, such that the library still runs on Java versions without virtual
+    // threads.
+    try {
+      return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * <p>Parses all the given files and waits for them to complete.
+   *
+   * <p>The files are opened with {@link RdbParser#memoryMapped(Path)}. Exceptions thrown while
+   * opening or parsing a file are recorded in its result. Errors are not, and are rethrown by this
+   * method.
+   *
+   * <p>If the batch parser is closed before a file completes, the file is cancelled and its result
+   * records a {@link CancellationException}, or the exception thrown by the task once interrupted.
+   *
+   * @param <R> the type of the per-file results
+   * @param paths the RDB files
+   * @param task the task to run on each file
+   * @return the results, in the same order as the paths
+   *
+   * @throws InterruptedException if interrupted while waiting, in which case the files that are
+   *     still being parsed are cancelled.
+   */
+  public <R> List<RdbFileResult<R>> parseAll(Collection<Path> paths, final RdbFileTask<R> task)
+      throws InterruptedException {
+    List<Path> files = new ArrayList<Path>(paths);
+    List<Future<RdbFileResult<R>>> futures = new ArrayList<Future<RdbFileResult<R>>>(files.size());
+    try {
+      for (final Path path : files) {
+        FutureTask<RdbFileResult<R>> future = new FutureTask<RdbFileResult<R>>(
+            new Callable<RdbFileResult<R>>() {
+              @Override
+              public RdbFileResult<R> call() {
+                if (permits == null) {
+                  return parse(path, task);
+                }
+                try {
+                  permits.acquire();
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                  return new RdbFileResult<R>(path, null, null, e);
+                }
+                try {
+                  return parse(path, task);
+                } finally {
+                  permits.release();
+                }
+              }
+            });
+        futures.add(future);
+        running.add(future);
+        try {
+          executor.execute(future);
+        } catch (RejectedExecutionException e) {
+          // The batch parser was closed.
+          future.cancel(false);
+        }
+        // Covers a close() that swept the running files before this one was added.
+        if (closed) {
+          future.cancel(true);
+        }
+      }
+      List<RdbFileResult<R>> results = new ArrayList<RdbFileResult<R>>(futures.size());
+      for (int i = 0; i < futures.size(); ++i) {
+        try {
+          results.add(futures.get(i).get());
+        } catch (CancellationException e) {
+          results.add(new RdbFileResult<R>(files.get(i), null, null, e));
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof Error) {
+            throw (Error)cause;
+          }
+          results.add(new RdbFileResult<R>(files.get(i), null, null, (Exception)cause));
+        }
+      }
+      return results;
+    } finally {
+      for (Future<RdbFileResult<R>> future : futures) {
+        future.cancel(true);
+        running.remove(future);
+      }
+    }
+  }
+
+  private static <R> RdbFileResult<R> parse(Path path, RdbFileTask<R> task) {
+    RdbHeader header = null;
+    try (RdbParser parser = RdbParser.memoryMapped(path)) {
+      List<AuxField> auxFields = new ArrayList<AuxField>();
+      while (parser.nextIsAuxField()) {
+        auxFields.add((AuxField)parser.readNext());
+      }
+      header = new RdbHeader(path, parser.getRdbVersion(), auxFields);
+      R value = task.parse(header, parser);
+      return new RdbFileResult<R>(path, header, value, null);
+    } catch (Exception e) {
+      return new RdbFileResult<R>(path, header, null, e);
+    }
+  }
+
+  /**
+   * Shuts down the threads of this batch parser. The files of running batches that have not
+   * completed yet are cancelled, and those being parsed are interrupted. The running batches then
+   * return, with the cancelled files recorded as failures.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    executor.shutdownNow();
+    for (Future<?> future : running) {
+      future.cancel(true);
+    }
+  }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Supplies the parser with successive buffers of bytes from an RDB file or stream.
+ */
+interface BufferSource extends Closeable {
+
+  /**
+   * Returns a buffer holding the next bytes of the underlying file or stream, positioned for
+   * reading, or null if the end of the stream has been reached. The buffer returned by the previous
+   * call may be reused by the source.
+   */
+  ByteBuffer next() throws IOException;
+
+  /**
+   * Skips up to {@code numBytes} bytes past the end of the buffer returned by the last call to
+   * {@link #next} without reading them, and returns the number of bytes skipped. Sources that
+   * cannot skip efficiently return 0, in which case the caller reads through the bytes instead.
+   */
+  long skip(long numBytes) throws IOException;
+
+  /**
+   * Moves the source to the given absolute position, such that the next call to {@link #next}
+   * returns the bytes starting at that position. Throws an UnsupportedOperationException if the
+   * source is not seekable.
+   */
+  void seek(long position) throws IOException;
+
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A read-only view over a range of bytes.
+ *
+ * <p>Slices returned by an {@link RdbParser} in zero-copy mode point directly into the parser's
+ * internal buffers and are only valid until the next call to {@link RdbParser#readNext}. Use
+ * {@link #copy} or {@link #toByteArray} to keep their contents around for longer.
+ *
+ * <p>Two slices are equal if they hold the same bytes, regardless of their backing storage.
+ *
+ * @author John Whitbeck
+ */
+public final class ByteSlice {
+
+  private ByteBuffer buf;
+  private int offset;
+  private int length;
+
+  ByteSlice(ByteBuffer buf, int offset, int length) {
+    this.buf = buf;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  // Points this slice at another range of bytes. Only used by the parser in reuse mode, where the
+  // same slices are handed out for every entry.
+  void reset(ByteBuffer buf, int offset, int length) {
+    this.buf = buf;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  static ByteSlice wrap(byte[] bytes) {
+    return new ByteSlice(ByteBuffer.wrap(bytes), 0, bytes.length);
+  }
+
+  boolean isBackedBy(ByteBuffer b) {
+    return buf == b;
+  }
+
+  /**
+   * Returns the number of bytes in this slice.
+   *
+   * @return the length of this slice
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * Returns the byte at the given index.
+   *
+   * @param index the index of the byte, between 0 (inclusive) and {@link #length} (exclusive)
+   * @return the byte at the given index
+   */
+  public byte byteAt(int index) {
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+    }
+    return buf.get(offset + index);
+  }
+
+  /**
+   * Copies the contents of this slice into a new byte array.
+   *
+   * @return a copy of the bytes in this slice
+   */
+  public byte[] toByteArray() {
+    byte[] bytes = new byte[length];
+    copyTo(bytes, 0);
+    return bytes;
+  }
+
+  /**
+   * Copies the contents of this slice into the destination array at the given position.
+   *
+   * @param dest the destination array
+   * @param destPos the position in the destination array
+   */
+  public void copyTo(byte[] dest, int destPos) {
+    if (buf.hasArray()) {
+      System.arraycopy(buf.array(), buf.arrayOffset() + offset, dest, destPos, length);
+    } else {
+      ByteBuffer dup = buf.duplicate();
+      ((Buffer)dup).position(offset);
+      dup.get(dest, destPos, length);
+    }
+  }
+
+  /**
+   * Returns a slice holding a private copy of the contents of this slice. Unlike slices returned in
+   * zero-copy mode, the returned slice remains valid indefinitely.
+   *
+   * @return a copy of this slice
+   */
+  public ByteSlice copy() {
+    return wrap(toByteArray());
+  }
+
+  /**
+   * Returns a read-only ByteBuffer over the contents of this slice.
+   *
+   * @return a read-only ByteBuffer view of this slice
+   */
+  public ByteBuffer asByteBuffer() {
+    ByteBuffer dup = buf.asReadOnlyBuffer();
+    ((Buffer)dup).limit(offset + length);
+    ((Buffer)dup).position(offset);
+    return dup.slice();
+  }
+
+  /**
+   * Returns true if this slice starts with the given prefix.
+   *
+   * @param prefix the prefix
+   * @return true if this slice starts with the given prefix
+   */
+  public boolean startsWith(byte[] prefix) {
+    if (prefix.length > length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; ++i) {
+      if (buf.get(offset + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if this slice holds exactly the given bytes.
+   *
+   * @param bytes the bytes to compare against
+   * @return true if this slice holds the same bytes
+   */
+  public boolean contentEquals(byte[] bytes) {
+    return bytes.length == length && startsWith(bytes);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ByteSlice)) {
+      return false;
+    }
+    ByteSlice other = (ByteSlice)o;
+    if (other.length != length) {
+      return false;
+    }
+    for (int i = 0; i < length; ++i) {
+      if (buf.get(offset + i) != other.buf.get(other.offset + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a hash code of the contents of this slice, equal to {@link java.util.Arrays#hashCode}
+   * of the same bytes.
+   */
+  @Override
+  public int hashCode() {
+    int h = 1;
+    for (int i = 0; i < length; ++i) {
+      h = 31 * h + buf.get(offset + i);
+    }
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return StringUtils.getPrintableString(toByteArray());
+  }
+}
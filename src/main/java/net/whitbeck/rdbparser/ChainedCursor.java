@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+/**
+ * Visits the values of a sequence of nodes (e.g., the ziplists of a quicklist) one node after the
+ * other, only decoding a node once the previous one has been exhausted.
+ */
+abstract class ChainedCursor implements ValueCursor {
+
+  private final int numNodes;
+  private int nextNode = 0;
+  private ValueCursor current = null;
+
+  ChainedCursor(int numNodes) {
+    this.numNodes = numNodes;
+  }
+
+  // Returns a cursor over the values of the node at the given index.
+  abstract ValueCursor cursor(int node);
+
+  @Override
+  public boolean next() {
+    while (current == null || !current.next()) {
+      if (nextNode == numNodes) {
+        return false;
+      }
+      current = cursor(nextNode++);
+    }
+    return true;
+  }
+
+  @Override
+  public boolean isInteger() {
+    return current.isInteger();
+  }
+
+  @Override
+  public long getLong() {
+    return current.getLong();
+  }
+
+  @Override
+  public byte[] getBytes() {
+    return current.getBytes();
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+
+final class ChannelBufferSource implements BufferSource {
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private final ReadableByteChannel ch;
+  private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+  ChannelBufferSource(ReadableByteChannel ch) {
+    this.ch = ch;
+  }
+
+  @Override
+  public ByteBuffer next() throws IOException {
+    ((Buffer)buf).clear();
+    if (ch.read(buf) == -1) {
+      return null;
+    }
+    ((Buffer)buf).flip();
+    return buf;
+  }
+
+  @Override
+  public long skip(long numBytes) throws IOException {
+    // Only seek past distances larger than a buffer, shorter ones are cheaper to read through.
+    if (numBytes < BUFFER_SIZE || !(ch instanceof SeekableByteChannel)) {
+      return 0;
+    }
+    SeekableByteChannel sch = (SeekableByteChannel)ch;
+    long pos = sch.position();
+    long skipped = Math.max(0, Math.min(numBytes, sch.size() - pos));
+    sch.position(pos + skipped);
+    return skipped;
+  }
+
+  @Override
+  public void seek(long position) throws IOException {
+    if (!(ch instanceof SeekableByteChannel)) {
+      throw new UnsupportedOperationException("Seeking requires a file or a seekable channel.");
+    }
+    ((SeekableByteChannel)ch).position(position);
+  }
+
+  @Override
+  public void close() throws IOException {
+    ch.close();
+  }
+}
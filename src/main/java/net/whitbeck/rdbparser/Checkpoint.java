@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+/**
+ * <p>A position in an RDB file from which parsing can be resumed with
+ * {@link RdbParser#resume}.
+ *
+ * <p>A checkpoint holds the byte offset of the next entry, the RDB version of the file, and the
+ * identifier of the current database. Checkpoints are always taken between entries, and expire
+ * times, LRU idle times, and LFU frequencies are read together with the key they apply to, so no
+ * other parsing state needs to be carried over.
+ *
+ * <p>To persist a checkpoint, store the values returned by its getters and recreate it later with
+ * {@link #Checkpoint(long, int, long)}.
+ *
+ * @author John Whitbeck
+ * @see RdbParser#checkpoint
+ */
+public final class Checkpoint {
+
+  private final long offset;
+  private final int rdbVersion;
+  private final long db;
+
+  /**
+   * Creates a checkpoint from its components.
+   *
+   * @param offset the byte offset of the next entry in the RDB file
+   * @param rdbVersion the RDB version of the file
+   * @param db the identifier of the current database
+   */
+  public Checkpoint(long offset, int rdbVersion, long db) {
+    this.offset = offset;
+    this.rdbVersion = rdbVersion;
+    this.db = db;
+  }
+
+  /**
+   * Returns the byte offset of the next entry in the RDB file.
+   *
+   * @return the byte offset
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Returns the RDB version of the file.
+   *
+   * @return the RDB version
+   */
+  public int getRdbVersion() {
+    return rdbVersion;
+  }
+
+  /**
+   * Returns the identifier of the database that the next key/value pairs belong to.
+   *
+   * @return the database identifier
+   */
+  public long getDb() {
+    return db;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Checkpoint)) {
+      return false;
+    }
+    Checkpoint other = (Checkpoint)o;
+    return offset == other.offset && rdbVersion == other.rdbVersion && db == other.db;
+  }
+
+  @Override
+  public int hashCode() {
+    int h = (int)(offset ^ (offset >>> 32));
+    h = 31 * h + rdbVersion;
+    h = 31 * h + (int)(db ^ (db >>> 32));
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("CHECKPOINT (offset: %d, rdb version: %d, db: %d)",
+                         offset, rdbVersion, db);
+  }
+}
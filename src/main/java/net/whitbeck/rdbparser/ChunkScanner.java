@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits an RDB file into chunks of consecutive entries of roughly {@code chunkSize} bytes, for
+ * parsing on several threads. The file is scanned in keys-only mode, skipping over values by their
+ * length prefixes. Chunks are returned as they are found, such that they can be parsed while the
+ * rest of the file is still being scanned.
+ */
+final class ChunkScanner implements AutoCloseable {
+
+  static final class Chunk {
+    // Null for the first chunk, which is parsed from the start of the file.
+    final Checkpoint start;
+    final long numBytes;
+    final int numEntries;
+    // Whether the chunk starts in the middle of a database, i.e., its first entry is not a
+    // SelectDb entry but one was seen before it.
+    final boolean midDb;
+
+    Chunk(Checkpoint start, long numBytes, int numEntries, boolean midDb) {
+      this.start = start;
+      this.numBytes = numBytes;
+      this.numEntries = numEntries;
+      this.midDb = midDb;
+    }
+  }
+
+  private final Path path;
+  private final long chunkSize;
+  private final RdbParser parser;
+  private Checkpoint start = null;
+  private long startOffset = 0;
+  private long db = 0;
+  private boolean hasDb = false;
+  private boolean midDb = false;
+  private int numEntries = 0;
+  private boolean done = false;
+
+  ChunkScanner(Path path, long chunkSize) throws IOException {
+    this.path = path;
+    this.chunkSize = chunkSize;
+    this.parser = RdbParser.memoryMapped(path);
+    parser.setKeysOnly(true);
+    parser.setZeroCopy(true);
+    parser.setReuseEntries(true);
+  }
+
+  static List<Chunk> scanAll(Path path, long chunkSize) throws IOException {
+    List<Chunk> chunks = new ArrayList<Chunk>();
+    try (ChunkScanner scanner = new ChunkScanner(path, chunkSize)) {
+      Chunk chunk;
+      while ((chunk = scanner.next()) != null) {
+        chunks.add(chunk);
+      }
+    }
+    return chunks;
+  }
+
+  /**
+   * Returns the next chunk, or null once the whole file has been scanned. The last chunk extends
+   * to the end of the file.
+   */
+  Chunk next() throws IOException {
+    if (done) {
+      return null;
+    }
+    Entry entry;
+    while ((entry = parser.readNext()) != null) {
+      long offset = parser.lastEntryOffset();
+      Chunk chunk = null;
+      if (offset - startOffset >= chunkSize && numEntries > 0) {
+        chunk = new Chunk(start, offset - startOffset, numEntries, midDb);
+        start = new Checkpoint(offset, parser.getRdbVersion(), db);
+        midDb = hasDb && entry.getType() != EntryType.SELECT_DB;
+        startOffset = offset;
+        numEntries = 0;
+      }
+      numEntries += 1;
+      if (entry.getType() == EntryType.SELECT_DB) {
+        db = ((SelectDb)entry).getId();
+        hasDb = true;
+      }
+      if (chunk != null) {
+        return chunk;
+      }
+    }
+    done = true;
+    return new Chunk(start, Files.size(path) - startOffset, numEntries, midDb);
+  }
+
+  @Override
+  public void close() throws IOException {
+    parser.close();
+  }
+}
@@ -22,4 +22,115 @@ final class DoubleBytes {
   static final byte[] NEGATIVE_INFINITY = String.valueOf(Double.NEGATIVE_INFINITY).getBytes(ASCII);
   static final byte[] NaN = String.valueOf(Double.NaN).getBytes(ASCII);
 
+  // Powers of ten that are exactly representable as doubles.
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+    1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+  /**
+   * Parses an ASCII-formatted double, such as the scores of sorted sets. Also accepts the "inf",
+   * "-inf", and "nan" spellings used by Redis.
+   *
+   * <p>Decimals with at most 15 or so significant digits and small exponents, which covers most
+   * scores, are parsed without allocating: when both the digits and the power of ten are exactly
+   * representable as doubles, a single multiplication or division is correctly rounded. Other
+   * values fall back to Double.parseDouble.
+   */
+  static double parse(byte[] bytes, int offset, int length) {
+    int i = offset;
+    int end = offset + length;
+    boolean negative = false;
+    if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+      negative = bytes[i] == '-';
+      i += 1;
+    }
+    long mantissa = 0;
+    int exp = 0;
+    boolean hasDigits = false;
+    boolean exact = true;
+    boolean afterPoint = false;
+    for (; i < end; ++i) {
+      int c = bytes[i];
+      if (c >= '0' && c <= '9') {
+        hasDigits = true;
+        if (mantissa < MAX_EXACT_MANTISSA) {
+          mantissa = 10 * mantissa + (c - '0');
+          if (afterPoint) {
+            exp -= 1;
+          }
+        } else {
+          exact = false;
+        }
+      } else if (c == '.' && !afterPoint) {
+        afterPoint = true;
+      } else {
+        break;
+      }
+    }
+    if (hasDigits && i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+      i += 1;
+      boolean negativeExp = false;
+      if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+        negativeExp = bytes[i] == '-';
+        i += 1;
+      }
+      int e = 0;
+      boolean hasExpDigits = false;
+      for (; i < end && bytes[i] >= '0' && bytes[i] <= '9'; ++i) {
+        hasExpDigits = true;
+        if (e < 1000) {
+          e = 10 * e + (bytes[i] - '0');
+        }
+      }
+      if (!hasExpDigits) {
+        hasDigits = false;
+      }
+      exp += negativeExp ? -e : e;
+    }
+    if (!hasDigits || i != end) {
+      if (equalsIgnoreCase(bytes, offset, length, "inf")
+          || equalsIgnoreCase(bytes, offset, length, "+inf")
+          || equalsIgnoreCase(bytes, offset, length, "infinity")) {
+        return Double.POSITIVE_INFINITY;
+      } else if (equalsIgnoreCase(bytes, offset, length, "-inf")
+                 || equalsIgnoreCase(bytes, offset, length, "-infinity")) {
+        return Double.NEGATIVE_INFINITY;
+      } else if (equalsIgnoreCase(bytes, offset, length, "nan")) {
+        return Double.NaN;
+      }
+      exact = false;
+    }
+    if (exact && mantissa <= MAX_EXACT_MANTISSA && exp >= -22 && exp <= 22) {
+      double val = exp >= 0 ? mantissa * POWERS_OF_TEN[exp] : mantissa / POWERS_OF_TEN[-exp];
+      return negative ? -val : val;
+    }
+    return Double.parseDouble(new String(bytes, offset, length, ASCII));
+  }
+
+  private static boolean equalsIgnoreCase(byte[] bytes, int offset, int length, String s) {
+    if (length != s.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; ++i) {
+      if (Character.toLowerCase(bytes[offset + i]) != s.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses a double stored as 8 little-endian bytes, such as the scores of SORTED_SET2 values.
+   */
+  static double parseBinary(byte[] bytes, int offset) {
+    long bits = 0;
+    for (int i = 7; i >= 0; --i) {
+      bits = (bits << 8) | (bytes[offset + i] & 0xff);
+    }
+    return Double.longBitsToDouble(bits);
+  }
+
 }
@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+/**
+ * <p>Selects which key/value pairs an {@link RdbParser} returns.
+ *
+ * <p>The filter is called right after the key and value type of each key/value pair have been
+ * read, before the value itself. The values of rejected key/value pairs are skipped using only
+ * their length prefixes, and are never copied or decoded.
+ *
+ * <p>For example, the following filter only keeps hashes in DB 0 whose keys start with "user:".
+ *
+ * <pre>{@code
+ * final byte[] prefix = "user:".getBytes("ASCII");
+ * parser.setFilter(new EntryFilter() {
+ *     public boolean accept(long db, ByteSlice key, ValueType valueType) {
+ *       return db == 0 && key.startsWith(prefix) && valueType == ValueType.HASHMAP_AS_LISTPACK;
+ *     }
+ *   });
+ * }</pre>
+ *
+ * @author John Whitbeck
+ * @see RdbParser#setFilter
+ */
+public interface EntryFilter {
+
+  /**
+   * Returns true if the key/value pair should be read and returned by the parser.
+   *
+   * @param db the identifier of the database the key belongs to
+   * @param key the key, only valid for the duration of the call
+   * @param valueType the value type encoding
+   * @return true to read the key/value pair, false to skip it
+   */
+  boolean accept(long db, ByteSlice key, ValueType valueType);
+}
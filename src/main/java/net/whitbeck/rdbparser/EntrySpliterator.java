@@ -0,0 +1,214 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * <p>A spliterator over the entries of an RDB file that splits on entry boundaries.
+ *
+ * <p>Traversed without splitting, it parses the file sequentially. On the first split, it scans the
+ * file in keys-only mode to cut it into chunks of consecutive entries of roughly
+ * {@code chunkSize} bytes, and from then on splits ranges of chunks in halves. Each split parses
+ * its chunks from its own memory-mapped view of the file, resumed from the checkpoint at the start
+ * of its first chunk.
+ */
+final class EntrySpliterator implements Spliterator<Entry> {
+
+  // The parsers opened by a spliterator and all its splits, closed when the stream is closed.
+  static final class Parsers implements Runnable {
+    private final ConcurrentLinkedQueue<RdbParser> parsers = new ConcurrentLinkedQueue<RdbParser>();
+
+    RdbParser open(Path path, int windowSize) throws IOException {
+      RdbParser parser = RdbParser.memoryMapped(path, windowSize);
+      parsers.add(parser);
+      return parser;
+    }
+
+    void close(RdbParser parser) throws IOException {
+      parsers.remove(parser);
+      parser.close();
+    }
+
+    @Override
+    public void run() {
+      IOException error = null;
+      RdbParser parser;
+      while ((parser = parsers.poll()) != null) {
+        try {
+          parser.close();
+        } catch (IOException e) {
+          error = e;
+        }
+      }
+      if (error != null) {
+        throw new UncheckedIOException(error);
+      }
+    }
+  }
+
+  private final Path path;
+  private final long chunkSize;
+  private final Parsers parsers;
+  // Null until the first split, after which this spliterator covers chunks[lo, hi).
+  private List<ChunkScanner.Chunk> chunks = null;
+  private int lo = 0;
+  private int hi = 0;
+  private RdbParser parser = null;
+  // The number of entries left in the chunk being traversed.
+  private int remaining = 0;
+  // Whether the parser is not positioned at the start of chunk lo, e.g., after a split.
+  private boolean needsSeek = false;
+  private boolean done = false;
+
+  EntrySpliterator(Path path, long chunkSize, Parsers parsers) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive.");
+    }
+    this.path = path;
+    this.chunkSize = chunkSize;
+    this.parsers = parsers;
+  }
+
+  private EntrySpliterator(EntrySpliterator parent, int lo, int hi) {
+    this.path = parent.path;
+    this.chunkSize = parent.chunkSize;
+    this.parsers = parent.parsers;
+    this.chunks = parent.chunks;
+    this.lo = lo;
+    this.hi = hi;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super Entry> action) {
+    try {
+      Entry entry = next();
+      if (entry == null) {
+        return false;
+      }
+      action.accept(entry);
+      return true;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Entry next() throws IOException {
+    if (done) {
+      return null;
+    }
+    if (chunks == null) {
+      // Never split, parse the whole file.
+      if (parser == null) {
+        parser = parsers.open(path, MappedBufferSource.DEFAULT_WINDOW_SIZE);
+      }
+      Entry entry = parser.readNext();
+      if (entry == null) {
+        done = true;
+        release();
+      }
+      return entry;
+    }
+    if (remaining == 0) {
+      if (lo == hi) {
+        done = true;
+        release();
+        return null;
+      }
+      ChunkScanner.Chunk chunk = chunks.get(lo);
+      if (parser == null) {
+        parser = parsers.open(path, windowSize(lo, hi));
+        needsSeek = true;
+      }
+      if (needsSeek) {
+        if (chunk.start != null) {
+          parser.resume(chunk.start);
+        }
+        needsSeek = false;
+      }
+      remaining = chunk.numEntries;
+      lo += 1;
+    }
+    remaining -= 1;
+    return parser.readNext();
+  }
+
+  private int windowSize(int from, int to) {
+    long numBytes = 0;
+    for (int i = from; i < to; ++i) {
+      numBytes += chunks.get(i).numBytes;
+    }
+    return (int)Math.max(1, Math.min(numBytes, MappedBufferSource.DEFAULT_WINDOW_SIZE));
+  }
+
+  private void release() throws IOException {
+    if (parser != null) {
+      parsers.close(parser);
+      parser = null;
+    }
+  }
+
+  @Override
+  public Spliterator<Entry> trySplit() {
+    if (done || remaining > 0) {
+      // The remaining entries of the current chunk must precede any split.
+      return null;
+    }
+    if (chunks == null) {
+      if (parser != null) {
+        return null; // already traversing the whole file
+      }
+      try {
+        chunks = ChunkScanner.scanAll(path, chunkSize);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      hi = chunks.size();
+    }
+    if (hi - lo < 2) {
+      return null;
+    }
+    int mid = (lo + hi) >>> 1;
+    EntrySpliterator prefix = new EntrySpliterator(this, lo, mid);
+    lo = mid;
+    needsSeek = true;
+    return prefix;
+  }
+
+  @Override
+  public long estimateSize() {
+    if (chunks == null) {
+      return Long.MAX_VALUE;
+    }
+    long size = remaining;
+    for (int i = lo; i < hi; ++i) {
+      size += chunks.get(i).numEntries;
+    }
+    return size;
+  }
+
+  @Override
+  public int characteristics() {
+    int characteristics = ORDERED | NONNULL;
+    if (chunks != null) {
+      characteristics |= SIZED | SUBSIZED;
+    }
+    return characteristics;
+  }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.util.Arrays;
+
+/**
+ * Base class of the cursors that decode values one at a time, straight out of the envelope of a
+ * packed encoding. Subclasses decode the next value in {@link #next} and either set
+ * {@link #isInt} and {@link #intValue}, or point {@link #strOffset} and {@link #strLen} at the
+ * bytes of a string value in the envelope.
+ */
+abstract class EnvelopeCursor implements ValueCursor {
+
+  final byte[] envelope;
+  int pos;
+  boolean isInt;
+  long intValue;
+  int strOffset;
+  int strLen;
+
+  EnvelopeCursor(byte[] envelope, int pos) {
+    this.envelope = envelope;
+    this.pos = pos;
+  }
+
+  final void setInt(long val) {
+    isInt = true;
+    intValue = val;
+  }
+
+  final void setString(int offset, int len) {
+    isInt = false;
+    strOffset = offset;
+    strLen = len;
+  }
+
+  @Override
+  public boolean isInteger() {
+    return isInt;
+  }
+
+  @Override
+  public long getLong() {
+    if (!isInt) {
+      throw new IllegalStateException("Current value is not an integer.");
+    }
+    return intValue;
+  }
+
+  @Override
+  public byte[] getBytes() {
+    if (isInt) {
+      return IntegerBytes.format(intValue);
+    }
+    return Arrays.copyOfRange(envelope, strOffset, strOffset + strLen);
+  }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a sorted set from a cursor over its flattened member/score pairs.
+ */
+final class FlatSortedSetCursor implements SortedSetCursor {
+
+  private final ValueCursor values;
+  private final boolean binaryScores;
+  private ByteBuffer envelope = null; // lazily wraps the envelope of a packed encoding
+  private ByteSlice member;
+  private double score;
+
+  FlatSortedSetCursor(ValueCursor values, boolean binaryScores) {
+    this.values = values;
+    this.binaryScores = binaryScores;
+  }
+
+  @Override
+  public boolean next() {
+    if (!values.next()) {
+      return false;
+    }
+    member = readMember();
+    if (!values.next()) {
+      throw new IllegalStateException("Sorted set member without a score.");
+    }
+    score = readScore();
+    return true;
+  }
+
+  private ByteSlice readMember() {
+    if (values instanceof EnvelopeCursor && !values.isInteger()) {
+      EnvelopeCursor cursor = (EnvelopeCursor)values;
+      if (envelope == null) {
+        envelope = ByteBuffer.wrap(cursor.envelope);
+      }
+      return new ByteSlice(envelope, cursor.strOffset, cursor.strLen);
+    }
+    return ByteSlice.wrap(values.getBytes());
+  }
+
+  private double readScore() {
+    if (values.isInteger()) {
+      return values.getLong();
+    }
+    if (values instanceof EnvelopeCursor) {
+      EnvelopeCursor cursor = (EnvelopeCursor)values;
+      return DoubleBytes.parse(cursor.envelope, cursor.strOffset, cursor.strLen);
+    }
+    byte[] bytes = values.getBytes();
+    if (binaryScores) {
+      return DoubleBytes.parseBinary(bytes, 0);
+    }
+    return DoubleBytes.parse(bytes, 0, bytes.length);
+  }
+
+  @Override
+  public ByteSlice getMember() {
+    return member;
+  }
+
+  @Override
+  public double getScore() {
+    return score;
+  }
+}
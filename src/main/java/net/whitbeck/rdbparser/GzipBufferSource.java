@@ -0,0 +1,478 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * <p>Inflates a gzip file or stream, including multi-member files such as those written by pigz
+ * or by concatenating gzip files.
+ *
+ * <p>Members are inflated through large buffers. When reading from a file with several threads,
+ * the source scans the compressed bytes ahead of the current member for candidate member headers
+ * and speculatively inflates members from these offsets on worker threads. A speculatively
+ * inflated member is only used once the preceding member ends exactly at its offset, and only if
+ * its CRC32 and size match its trailer. Members that fail to inflate (i.e., false candidates) or
+ * that inflate to more than {@link #MAX_SPECULATIVE_SIZE} bytes are ignored and read sequentially
+ * instead. As the size of a member is only known once its end is found, speculatively inflated
+ * members are held in buffers that start small and double in size up to the buffer size, such that
+ * small members, e.g., those written by pigz, do not each hold a full buffer.
+ */
+final class GzipBufferSource implements BufferSource {
+
+  static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+  static final int MAX_SPECULATIVE_SIZE = 32 * 1024 * 1024;
+
+  // How far past the current member to look for member headers, per worker thread.
+  private static final long LOOKAHEAD_PER_THREAD = 16 * 1024 * 1024;
+  private static final int SCAN_BLOCK_SIZE = 64 * 1024;
+  private static final int SPECULATIVE_INPUT_SIZE = 16 * 1024;
+  private static final int MIN_SPECULATIVE_BUFFER_SIZE = 16 * 1024;
+
+  private final ReadableByteChannel ch;
+  private final int bufferSize;
+  private final CompressedInput input;
+  private final MemberInflater member;
+  private final byte[] out;
+  private boolean inMember = false;
+  private boolean endOfStream = false;
+  private long numMembers = 0;
+
+  /* Parallel inflation */
+  private final FileChannel file;
+  private final int numThreads;
+  private final ExecutorService workers;
+  private final TreeMap<Long, Future<Inflated>> speculative = new TreeMap<Long, Future<Inflated>>();
+  private final ByteBuffer scanBuf;
+  private long scanPos = 0;
+  private Iterator<ByteBuffer> inflated = null;
+
+  GzipBufferSource(ReadableByteChannel ch, int bufferSize) {
+    this(ch, null, 1, bufferSize);
+  }
+
+  GzipBufferSource(FileChannel file, int numThreads, int bufferSize) {
+    this(file, file, numThreads, bufferSize);
+  }
+
+  private GzipBufferSource(ReadableByteChannel ch, FileChannel file, int numThreads,
+                           int bufferSize) {
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive.");
+    }
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("Buffer size must be positive.");
+    }
+    this.ch = ch;
+    this.file = file;
+    this.bufferSize = bufferSize;
+    this.numThreads = numThreads;
+    this.input = new CompressedInput(ch, file, bufferSize);
+    this.member = new MemberInflater(input);
+    this.out = new byte[bufferSize];
+    if (file != null && numThreads > 1) {
+      this.scanBuf = ByteBuffer.allocate(SCAN_BLOCK_SIZE);
+      this.workers = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "rdb-parser-inflate-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    } else {
+      this.scanBuf = null;
+      this.workers = null;
+    }
+  }
+
+  @Override
+  public ByteBuffer next() throws IOException {
+    while (true) {
+      if (inflated != null) {
+        if (inflated.hasNext()) {
+          return inflated.next();
+        }
+        inflated = null;
+      }
+      if (endOfStream) {
+        return null;
+      }
+      if (!inMember) {
+        if (workers != null) {
+          Inflated m = speculated(input.position());
+          if (m != null) {
+            inflated = m.buffers.iterator();
+            input.seek(m.end);
+            numMembers += 1;
+            continue;
+          }
+        }
+        // Like GZIPInputStream, ignore trailing bytes that are not a gzip member.
+        if (!member.start(numMembers > 0)) {
+          endOfStream = true;
+          return null;
+        }
+        inMember = true;
+        numMembers += 1;
+      }
+      int len = 0;
+      while (len < out.length) {
+        int n = member.inflate(out, len, out.length - len);
+        if (n == -1) {
+          inMember = false;
+          break;
+        }
+        len += n;
+      }
+      if (len > 0) {
+        return ByteBuffer.wrap(out, 0, len);
+      }
+    }
+  }
+
+  private Inflated speculated(long pos) throws IOException {
+    // Candidates before the current position turned out not to be member boundaries.
+    SortedMap<Long, Future<Inflated>> stale = speculative.headMap(pos);
+    for (Future<Inflated> f : stale.values()) {
+      // Interrupting a worker would close the shared file channel.
+      f.cancel(false);
+    }
+    stale.clear();
+    Future<Inflated> f = speculative.remove(pos);
+    speculate(pos);
+    if (f == null) {
+      return null;
+    }
+    try {
+      return f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for an inflate thread.");
+    } catch (ExecutionException e) {
+      return null;
+    }
+  }
+
+  private void speculate(long pos) throws IOException {
+    long limit = Math.min(file.size(), pos + LOOKAHEAD_PER_THREAD * numThreads);
+    if (scanPos <= pos) {
+      scanPos = pos + 1;
+    }
+    while (speculative.size() < numThreads && scanPos < limit) {
+      ((Buffer)scanBuf).clear();
+      while (scanBuf.hasRemaining() && file.read(scanBuf, scanPos + scanBuf.position()) > 0) {
+        // Keep reading until the block is full or the file ends.
+      }
+      byte[] b = scanBuf.array();
+      int len = scanBuf.position();
+      if (len < 4) {
+        scanPos = limit;
+        return;
+      }
+      for (int i = 0; i < len - 3; ++i) {
+        if (b[i] == 0x1f && b[i + 1] == (byte)0x8b && b[i + 2] == 8 && (b[i + 3] & 0xe0) == 0) {
+          final long candidate = scanPos + i;
+          speculative.put(candidate, workers.submit(new Callable<Inflated>() {
+              @Override
+              public Inflated call() {
+                return inflateMember(candidate);
+              }
+            }));
+          if (speculative.size() == numThreads) {
+            scanPos = candidate + 1;
+            return;
+          }
+        }
+      }
+      scanPos += len - 3;
+    }
+  }
+
+  private static final class Inflated {
+    final long end;
+    final List<ByteBuffer> buffers;
+
+    Inflated(long end, List<ByteBuffer> buffers) {
+      this.end = end;
+      this.buffers = buffers;
+    }
+  }
+
+  // Inflates the member starting at offset, or returns null if there is no valid member there or
+  // if it is too large to be held in memory.
+  private Inflated inflateMember(long offset) {
+    CompressedInput in = new CompressedInput(file, file, SPECULATIVE_INPUT_SIZE);
+    in.seek(offset);
+    MemberInflater m = new MemberInflater(in);
+    try {
+      if (!m.start(false)) {
+        return null;
+      }
+      List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+      byte[] b = new byte[Math.min(bufferSize, MIN_SPECULATIVE_BUFFER_SIZE)];
+      int len = 0;
+      long size = 0;
+      int n;
+      while ((n = m.inflate(b, len, b.length - len)) != -1) {
+        len += n;
+        size += n;
+        if (size > MAX_SPECULATIVE_SIZE) {
+          return null;
+        }
+        if (len == b.length) {
+          buffers.add(ByteBuffer.wrap(b));
+          b = new byte[(int)Math.min(bufferSize, 2L * b.length)];
+          len = 0;
+        }
+      }
+      if (len > 0) {
+        buffers.add(ByteBuffer.wrap(b, 0, len));
+      }
+      return new Inflated(in.position(), buffers);
+    } catch (IOException e) {
+      return null;
+    } finally {
+      m.end();
+    }
+  }
+
+  @Override
+  public long skip(long numBytes) {
+    // Compressed bytes cannot be skipped without inflating them.
+    return 0;
+  }
+
+  @Override
+  public void seek(long position) {
+    throw new UnsupportedOperationException("Seeking is not supported on gzip input.");
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (workers != null) {
+      workers.shutdownNow();
+    }
+    member.end();
+    ch.close();
+  }
+
+  /**
+   * Buffered reader of compressed bytes, either sequentially from a channel or by position from
+   * a file.
+   */
+  static final class CompressedInput {
+    final ReadableByteChannel ch;
+    final FileChannel file;
+    final byte[] buf;
+    int pos = 0;
+    int lim = 0;
+    long end = 0; // offset of the byte following buf[lim - 1]
+
+    CompressedInput(ReadableByteChannel ch, FileChannel file, int bufferSize) {
+      this.ch = ch;
+      this.file = file;
+      this.buf = new byte[bufferSize];
+    }
+
+    long position() {
+      return end - (lim - pos);
+    }
+
+    void seek(long position) {
+      pos = 0;
+      lim = 0;
+      end = position;
+    }
+
+    // Returns true if there are buffered bytes, reading more if necessary, or false at the end
+    // of the input.
+    boolean fill() throws IOException {
+      if (pos < lim) {
+        return true;
+      }
+      ByteBuffer bb = ByteBuffer.wrap(buf);
+      int n = 0;
+      while (n == 0) {
+        n = file != null ? file.read(bb, end) : ch.read(bb);
+      }
+      if (n == -1) {
+        return false;
+      }
+      pos = 0;
+      lim = n;
+      end += n;
+      return true;
+    }
+
+    int read() throws IOException {
+      if (!fill()) {
+        return -1;
+      }
+      return buf[pos++] & 0xff;
+    }
+  }
+
+  /**
+   * Inflates one gzip member at a time from a compressed input.
+   */
+  static final class MemberInflater {
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final CompressedInput in;
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private long size;
+
+    MemberInflater(CompressedInput in) {
+      this.in = in;
+    }
+
+    // Reads the header of the next member. Returns false at the end of the input, or, if
+    // trailingDataAllowed is true, if the next bytes are not a gzip header.
+    boolean start(boolean trailingDataAllowed) throws IOException {
+      int b = in.read();
+      if (b == -1) {
+        return false;
+      }
+      if (b != 0x1f || in.read() != 0x8b || in.read() != 8) {
+        if (trailingDataAllowed) {
+          return false;
+        }
+        throw new ZipException("Not in gzip format.");
+      }
+      int flags = readByte();
+      if ((flags & 0xe0) != 0) {
+        throw new ZipException("Unsupported gzip flags: " + flags);
+      }
+      skip(6); // modification time, extra flags and operating system
+      if ((flags & FEXTRA) != 0) {
+        skip(readByte() | (readByte() << 8));
+      }
+      if ((flags & FNAME) != 0) {
+        while (readByte() != 0) {
+          // Skip the zero-terminated file name.
+        }
+      }
+      if ((flags & FCOMMENT) != 0) {
+        while (readByte() != 0) {
+          // Skip the zero-terminated comment.
+        }
+      }
+      if ((flags & FHCRC) != 0) {
+        skip(2);
+      }
+      inflater.reset();
+      crc.reset();
+      size = 0;
+      return true;
+    }
+
+    // Inflates up to len bytes into out and returns the number of bytes inflated, or -1 once the
+    // member is complete and its trailer has been verified.
+    int inflate(byte[] out, int off, int len) throws IOException {
+      try {
+        while (true) {
+          if (inflater.finished()) {
+            readTrailer();
+            return -1;
+          }
+          if (inflater.needsInput()) {
+            if (!in.fill()) {
+              throw new EOFException("Unexpected end of gzip stream.");
+            }
+            inflater.setInput(in.buf, in.pos, in.lim - in.pos);
+          }
+          int n = inflater.inflate(out, off, len);
+          in.pos = in.lim - inflater.getRemaining();
+          if (n > 0) {
+            crc.update(out, off, n);
+            size += n;
+            return n;
+          }
+          if (inflater.needsDictionary()) {
+            throw new ZipException("Invalid gzip data: preset dictionary.");
+          }
+        }
+      } catch (DataFormatException e) {
+        ZipException ze = new ZipException("Invalid gzip data.");
+        ze.initCause(e);
+        throw ze;
+      }
+    }
+
+    private void readTrailer() throws IOException {
+      long expectedCrc = readInt();
+      long expectedSize = readInt();
+      if (expectedCrc != crc.getValue()) {
+        throw new ZipException("Corrupt gzip member: CRC32 mismatch.");
+      }
+      if (expectedSize != (size & 0xffffffffL)) {
+        throw new ZipException("Corrupt gzip member: size mismatch.");
+      }
+    }
+
+    private long readInt() throws IOException {
+      long b0 = readByte();
+      long b1 = readByte();
+      long b2 = readByte();
+      long b3 = readByte();
+      return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+    }
+
+    private int readByte() throws IOException {
+      int b = in.read();
+      if (b == -1) {
+        throw new EOFException("Unexpected end of gzip stream.");
+      }
+      return b;
+    }
+
+    private void skip(int n) throws IOException {
+      for (int i = 0; i < n; ++i) {
+        readByte();
+      }
+    }
+
+    void end() {
+      inflater.end();
+    }
+  }
+}
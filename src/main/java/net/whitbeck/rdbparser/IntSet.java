@@ -12,92 +12,133 @@
 
 package net.whitbeck.rdbparser;
 
-import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 
-final class IntSet extends LazyList<byte[]> {
-
-  private static final Charset ASCII = Charset.forName("ASCII");
+final class IntSet extends LazyList {
 
   private final byte[] envelope;
+  private final int encoding;
+  private final int num;
 
   IntSet(byte[] envelope) {
     this.envelope = envelope;
+    // Encoding can take three values: 2, 4, or 8, stored as a little-endian 32 bit integer.
+    this.encoding = readIntAt(envelope, 0);
+    // Number of ints is stored as a little-endian 32 bit integer, stored right after the encoding.
+    this.num = readIntAt(envelope, 4);
   }
 
-  private int readIntAt(int pos) {
+  private static int readIntAt(byte[] envelope, int pos) {
     return ((int)envelope[pos++] & 0xff) <<  0
          | ((int)envelope[pos++] & 0xff) <<  8
          | ((int)envelope[pos++] & 0xff) << 16
          | ((int)envelope[pos++] & 0xff) << 24;
   }
 
-  private int getEncoding() {
-    // Encoding can take three values: 2, 4, or 8, stored as a little-endian 32 bit integer.
-    return readIntAt(0);
+  private void checkEncoding() {
+    if (encoding != 2 && encoding != 4 && encoding != 8) {
+      throw new IllegalStateException("Unknown intset encoding");
+    }
   }
 
-  private int getNumInts() {
-    // Number of ints is stored as a little-endian 32 bit integer, stored right after the encoding.
-    return readIntAt(4);
+  // Returns the idx-th integer of the set, skipping the encoding and num ints.
+  private long valueAt(int idx) {
+    int pos = 8 + idx * encoding;
+    switch (encoding) {
+      case 2:
+        return ((long)envelope[pos++] & 0xff) << 0
+            |  (long)envelope[pos++]         << 8;
+      case 4:
+        return ((long)envelope[pos++] & 0xff) <<  0
+            | ((long)envelope[pos++] & 0xff) <<  8
+            | ((long)envelope[pos++] & 0xff) << 16
+            | ((long)envelope[pos++])        << 24;
+      default:
+        return ((long)envelope[pos++] & 0xff) <<  0
+            | ((long)envelope[pos++] & 0xff) <<  8
+            | ((long)envelope[pos++] & 0xff) << 16
+            | ((long)envelope[pos++] & 0xff) << 24
+            | ((long)envelope[pos++] & 0xff) << 32
+            | ((long)envelope[pos++] & 0xff) << 40
+            | ((long)envelope[pos++] & 0xff) << 48
+            | (long)envelope[pos++]        << 56;
+    }
   }
 
-  private List<byte[]> read16BitInts(int num) {
-    List<byte[]> ints = new ArrayList<byte[]>(num);
-    int pos = 8; // skip the encoding and num ints
+  /**
+   * Returns the integers in the set, in ascending order.
+   */
+  long[] toLongArray() {
+    checkEncoding();
+    long[] ints = new long[num];
     for (int i = 0; i < num; ++i) {
-      long val = ((long)envelope[pos++] & 0xff) << 0
-               |  (long)envelope[pos++]         << 8;
-      ints.add(String.valueOf(val).getBytes(ASCII));
+      ints[i] = valueAt(i);
     }
     return ints;
   }
 
-  private List<byte[]> read32BitInts(int num) {
-    List<byte[]> ints = new ArrayList<byte[]>(num);
-    int pos = 8; // skip the encoding and num ints
-    for (int i = 0; i < num; ++i) {
-      long val = ((long)envelope[pos++] & 0xff) <<  0
-               | ((long)envelope[pos++] & 0xff) <<  8
-               | ((long)envelope[pos++] & 0xff) << 16
-               | ((long)envelope[pos++])        << 24;
-      ints.add(String.valueOf(val).getBytes(ASCII));
+  /**
+   * Returns true if the set contains the given integer. Redis keeps intsets sorted, so this is a
+   * binary search over the envelope.
+   */
+  boolean contains(long value) {
+    checkEncoding();
+    int lo = 0;
+    int hi = num - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      long midValue = valueAt(mid);
+      if (midValue < value) {
+        lo = mid + 1;
+      } else if (midValue > value) {
+        hi = mid - 1;
+      } else {
+        return true;
+      }
     }
-    return ints;
+    return false;
   }
 
-  private List<byte[]> read64BitInts(int num) {
-    List<byte[]> ints = new ArrayList<byte[]>(num);
-    int pos = 8; // skip the encoding and num ints
-    for (int i = 0; i < num; ++i) {
-      long val = ((long)envelope[pos++] & 0xff) <<  0
-               | ((long)envelope[pos++] & 0xff) <<  8
-               | ((long)envelope[pos++] & 0xff) << 16
-               | ((long)envelope[pos++] & 0xff) << 24
-               | ((long)envelope[pos++] & 0xff) << 32
-               | ((long)envelope[pos++] & 0xff) << 40
-               | ((long)envelope[pos++] & 0xff) << 48
-               | (long)envelope[pos++]        << 56;
-      ints.add(String.valueOf(val).getBytes(ASCII));
-    }
-    return ints;
+  @Override
+  Cursor cursor() {
+    checkEncoding();
+    return new Cursor(this);
+  }
+
+  @Override
+  int sizeHint() {
+    return num;
   }
 
   @Override
   protected List<byte[]> realize() {
-    int encoding = getEncoding();
-    int num = getNumInts();
-    switch (encoding) {
-      case 2:
-        return read16BitInts(num);
-      case 4:
-        return read32BitInts(num);
-      case 8:
-        return read64BitInts(num);
-      default:
-        throw new IllegalStateException("Unknown intset encoding");
+    Cursor cursor = cursor();
+    List<byte[]> ints = new ArrayList<byte[]>(num);
+    while (cursor.next()) {
+      ints.add(cursor.getBytes());
     }
+    return ints;
   }
 
+  static final class Cursor extends EnvelopeCursor {
+
+    private final IntSet intSet;
+    private int idx = 0;
+
+    Cursor(IntSet intSet) {
+      super(intSet.envelope, 8);
+      this.intSet = intSet;
+    }
+
+    @Override
+    public boolean next() {
+      if (idx == intSet.num) {
+        return false;
+      }
+      setInt(intSet.valueAt(idx));
+      idx += 1;
+      return true;
+    }
+  }
 }
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+final class IntegerBytes {
+
+  // The length of the longest formatted long, i.e., "-9223372036854775808".
+  static final int MAX_LENGTH = 20;
+
+  // Small integers, such as the 0-12 immediates of ziplists and the 7-bit unsigned integers of
+  // listpacks, are formatted once. The cached arrays are shared by all callers and must never be
+  // modified.
+  private static final int CACHE_LOW = -128;
+  private static final int CACHE_HIGH = 1023;
+  private static final byte[][] CACHE = new byte[CACHE_HIGH - CACHE_LOW + 1][];
+
+  // The tens and ones digits of the numbers from 0 to 99.
+  private static final byte[] DIGIT_TENS = new byte[100];
+  private static final byte[] DIGIT_ONES = new byte[100];
+
+  static {
+    for (int i = 0; i < 100; ++i) {
+      DIGIT_TENS[i] = (byte)('0' + i / 10);
+      DIGIT_ONES[i] = (byte)('0' + i % 10);
+    }
+    for (int i = CACHE_LOW; i <= CACHE_HIGH; ++i) {
+      byte[] bytes = new byte[length(i)];
+      write(i, bytes, bytes.length);
+      CACHE[i - CACHE_LOW] = bytes;
+    }
+  }
+
+  /**
+   * Formats an integer as ASCII, as String.valueOf(value).getBytes() would, without going through
+   * a String. Small integers are returned from a cache of shared arrays, which must not be
+   * modified.
+   */
+  static byte[] format(long value) {
+    if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+      return CACHE[(int)value - CACHE_LOW];
+    }
+    byte[] bytes = new byte[length(value)];
+    write(value, bytes, bytes.length);
+    return bytes;
+  }
+
+  /**
+   * Formats an integer as ASCII into dest, starting at offset, and returns the number of bytes
+   * written. At most MAX_LENGTH bytes are written.
+   */
+  static int format(long value, byte[] dest, int offset) {
+    int len = length(value);
+    write(value, dest, offset + len);
+    return len;
+  }
+
+  // Returns the number of bytes needed to format the value.
+  static int length(long value) {
+    // Work on non-positive values, such that Long.MIN_VALUE needs no special case.
+    long v = value < 0 ? value : -value;
+    int sign = value < 0 ? 1 : 0;
+    long p = -10;
+    for (int i = 1; i < 19; ++i) {
+      if (v > p) {
+        return sign + i;
+      }
+      p = 10 * p;
+    }
+    return sign + 19;
+  }
+
+  // Writes the digits of the value backwards, ending right before end.
+  private static void write(long value, byte[] buf, int end) {
+    int pos = end;
+    long q = value < 0 ? value : -value;
+    // Two digits at a time, switching to cheaper int divisions once the value fits in an int.
+    while (q < Integer.MIN_VALUE) {
+      long q2 = q / 100;
+      int r = (int)(q2 * 100 - q);
+      q = q2;
+      buf[--pos] = DIGIT_ONES[r];
+      buf[--pos] = DIGIT_TENS[r];
+    }
+    int iq = (int)q;
+    while (iq <= -100) {
+      int q2 = iq / 100;
+      int r = q2 * 100 - iq;
+      iq = q2;
+      buf[--pos] = DIGIT_ONES[r];
+      buf[--pos] = DIGIT_TENS[r];
+    }
+    int r = -iq;
+    buf[--pos] = DIGIT_ONES[r];
+    if (r >= 10) {
+      buf[--pos] = DIGIT_TENS[r];
+    }
+    if (value < 0) {
+      buf[--pos] = '-';
+    }
+  }
+}
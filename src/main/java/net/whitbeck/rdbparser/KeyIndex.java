@@ -0,0 +1,287 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * <p>A sidecar index that maps the keys of an RDB file to the offsets of their entries, for fast
+ * random-access lookups of single keys.
+ *
+ * <p>The index is built once per RDB file with {@link #build}, which scans the file in keys-only
+ * mode and writes the index to a separate file. Lookups then binary-search the index for the
+ * hash of the key, seek the RDB file directly to the matching entry, and only decode that entry.
+ *
+ * <p>The index file consists of a header followed by one fixed-size record per key, sorted by key
+ * hash. Each record holds a 64-bit hash of the key, the offset of its entry in the RDB file, and
+ * its database identifier. The header records the size of the RDB file and its last 8 bytes, which
+ * hold the checksum of the file since RDB version 5. Both are checked when the index is opened to
+ * detect an index built from a different snapshot.
+ *
+ * <p>KeyIndex instances are not thread safe.
+ *
+ * @author John Whitbeck
+ */
+public final class KeyIndex implements AutoCloseable {
+
+  private static final byte[] MAGIC = "RDBKIDX2".getBytes(Charset.forName("ASCII"));
+  // magic, rdb size, rdb trailer, rdb version, count
+  private static final int HEADER_SIZE = 8 + 8 + 8 + 4 + 8;
+  private static final int TRAILER_SIZE = 8;
+  private static final int RECORD_SIZE = 8 + 8 + 4; // key hash, entry offset, db
+
+  private final FileChannel indexChannel;
+  private final RdbParser parser;
+  private final int rdbVersion;
+  private final long numKeys;
+  private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+  private KeyIndex(FileChannel indexChannel, RdbParser parser, int rdbVersion, long numKeys) {
+    this.indexChannel = indexChannel;
+    this.parser = parser;
+    this.rdbVersion = rdbVersion;
+    this.numKeys = numKeys;
+  }
+
+  /**
+   * Scans the RDB file and writes an index of its keys to the index file, overwriting it if it
+   * already exists.
+   *
+   * @param rdbFile the RDB file to index
+   * @param indexFile the index file to write
+   *
+   * @throws IOException if there is an error reading the RDB file or writing the index file.
+   */
+  public static void build(Path rdbFile, Path indexFile) throws IOException {
+    long rdbSize = Files.size(rdbFile);
+    long[] offsets = new long[1024];
+    int[] dbs = new int[1024];
+    int[] hashLows = new int[1024];
+    // Each sort key holds the high 32 bits of the key hash followed by the record number, such that
+    // sorting them with a primitive sort yields the record order.
+    long[] sortKeys = new long[1024];
+    int n = 0;
+    int rdbVersion;
+    try (RdbParser parser = RdbParser.memoryMapped(rdbFile)) {
+      parser.setKeysOnly(true);
+      parser.setZeroCopy(true);
+      long db = 0;
+      Entry entry;
+      while ((entry = parser.readNext()) != null) {
+        if (entry.getType() == EntryType.SELECT_DB) {
+          db = ((SelectDb)entry).getId();
+        } else if (entry.getType() == EntryType.KEY_VALUE_PAIR) {
+          if (n == offsets.length) {
+            if (n == Integer.MAX_VALUE - 8) {
+              throw new IllegalStateException("Too many keys to index.");
+            }
+            int capacity = (int)Math.min(2L * n, Integer.MAX_VALUE - 8);
+            offsets = Arrays.copyOf(offsets, capacity);
+            dbs = Arrays.copyOf(dbs, capacity);
+            hashLows = Arrays.copyOf(hashLows, capacity);
+            sortKeys = Arrays.copyOf(sortKeys, capacity);
+          }
+          long hash = hash(((KeyValuePair)entry).getKeySlice());
+          offsets[n] = parser.lastEntryOffset();
+          dbs[n] = (int)db;
+          hashLows[n] = (int)hash;
+          sortKeys[n] = (hash & 0xffffffff00000000L) | n;
+          n += 1;
+        }
+      }
+      rdbVersion = parser.getRdbVersion();
+    }
+    long rdbTrailer = readTrailer(rdbFile);
+    Arrays.sort(sortKeys, 0, n);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        Files.newOutputStream(indexFile), 64 * 1024))) {
+      out.write(MAGIC);
+      out.writeLong(rdbSize);
+      out.writeLong(rdbTrailer);
+      out.writeInt(rdbVersion);
+      out.writeLong(n);
+      for (int i = 0; i < n; ++i) {
+        long sortKey = sortKeys[i];
+        int j = (int)(sortKey & 0xffffffffL);
+        out.writeLong((sortKey & 0xffffffff00000000L) | (hashLows[j] & 0xffffffffL));
+        out.writeLong(offsets[j]);
+        out.writeInt(dbs[j]);
+      }
+    }
+  }
+
+  /**
+   * Opens an index previously written by {@link #build} for lookups in the given RDB file.
+   *
+   * @param rdbFile the indexed RDB file
+   * @param indexFile the index file
+   * @return the opened index
+   *
+   * @throws IOException if there is an error opening either file.
+   * @throws IllegalStateException if the index file is invalid or was built from another file.
+   */
+  public static KeyIndex open(Path rdbFile, Path indexFile) throws IOException {
+    FileChannel ch = FileChannel.open(indexFile, StandardOpenOption.READ);
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      readFully(ch, header, 0);
+      ((Buffer)header).flip();
+      byte[] magic = new byte[MAGIC.length];
+      header.get(magic);
+      if (!Arrays.equals(MAGIC, magic)) {
+        throw new IllegalStateException("Not a valid key index file");
+      }
+      long rdbSize = header.getLong();
+      long rdbTrailer = header.getLong();
+      int rdbVersion = header.getInt();
+      long numKeys = header.getLong();
+      if (rdbSize != Files.size(rdbFile) || rdbTrailer != readTrailer(rdbFile)) {
+        throw new IllegalStateException("Key index does not match RDB file");
+      }
+      if (ch.size() != HEADER_SIZE + numKeys * RECORD_SIZE) {
+        throw new IllegalStateException("Key index file is truncated");
+      }
+      return new KeyIndex(ch, new RdbParser(rdbFile), rdbVersion, numKeys);
+    } catch (IOException | RuntimeException e) {
+      ch.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the number of keys in the index.
+   *
+   * @return the number of indexed keys
+   */
+  public long size() {
+    return numKeys;
+  }
+
+  /**
+   * Looks up a key in the given database and returns its key/value pair, or null if the key is
+   * not in the index.
+   *
+   * @param db the database identifier
+   * @param key the key to look up
+   * @return the key/value pair, or null.
+   *
+   * @throws IOException if there is an error reading the index or the RDB file.
+   * @throws IllegalStateException if an indexed offset does not point to a key/value pair, e.g.,
+   *     because the RDB file was replaced by another one with the same size and checksum.
+   */
+  public KeyValuePair lookup(long db, byte[] key) throws IOException {
+    ByteSlice keySlice = ByteSlice.wrap(key);
+    long hash = hash(keySlice);
+    int hashHigh = (int)(hash >>> 32);
+    // Binary search for the first record whose hash high bits are not lower than those of the key.
+    long lo = 0;
+    long hi = numKeys;
+    while (lo < hi) {
+      long mid = (lo + hi) >>> 1;
+      readRecord(mid);
+      if ((int)(record.getLong(0) >>> 32) < hashHigh) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    for (long i = lo; i < numKeys; ++i) {
+      readRecord(i);
+      long recordHash = record.getLong(0);
+      if ((int)(recordHash >>> 32) != hashHigh) {
+        break;
+      }
+      if (recordHash != hash || record.getInt(16) != db) {
+        continue;
+      }
+      parser.resume(new Checkpoint(record.getLong(8), rdbVersion, db));
+      Entry entry = parser.readNext();
+      if (!(entry instanceof KeyValuePair)) {
+        throw new IllegalStateException("Key index does not match RDB file");
+      }
+      KeyValuePair kvp = (KeyValuePair)entry;
+      if (kvp.getKeySlice().equals(keySlice)) {
+        return kvp;
+      }
+    }
+    return null;
+  }
+
+  private void readRecord(long i) throws IOException {
+    ((Buffer)record).clear();
+    readFully(indexChannel, record, HEADER_SIZE + i * RECORD_SIZE);
+  }
+
+  // The last bytes of the RDB file, i.e., its checksum since version 5, padded with zeros if the
+  // file is shorter.
+  private static long readTrailer(Path rdbFile) throws IOException {
+    try (FileChannel ch = FileChannel.open(rdbFile, StandardOpenOption.READ)) {
+      ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+      long size = ch.size();
+      if (size < TRAILER_SIZE) {
+        ((Buffer)trailer).limit((int)size);
+      }
+      readFully(ch, trailer, Math.max(0, size - TRAILER_SIZE));
+      return trailer.getLong(0);
+    }
+  }
+
+  private static void readFully(FileChannel ch, ByteBuffer dst, long position) throws IOException {
+    while (dst.hasRemaining()) {
+      int n = ch.read(dst, position);
+      if (n == -1) {
+        throw new IllegalStateException("Key index file is truncated");
+      }
+      position += n;
+    }
+  }
+
+  // 64-bit FNV-1a followed by the MurmurHash3 finalizer to spread the high bits.
+  static long hash(ByteSlice key) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < key.length(); ++i) {
+      h ^= key.byteAt(i) & 0xff;
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Closes the index file and the RDB file.
+   *
+   * @throws IOException from closing the underlying files.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      indexChannel.close();
+    } finally {
+      parser.close();
+    }
+  }
+}
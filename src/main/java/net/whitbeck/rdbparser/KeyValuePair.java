@@ -12,6 +12,8 @@
 
 package net.whitbeck.rdbparser;
 
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -33,22 +35,56 @@ import java.util.List;
 public final class KeyValuePair implements Entry {
 
   byte[] key;
+  ByteSlice keySlice;
   ValueType valueType;
   List<byte[]> values;
-  byte[] expireTime;
-  Long idle;
-  Integer freq;
-  Long minHashExpireTime;
+  ByteSlice rawValue;
+  // Outside of zero-copy mode, the raw value is kept as a byte array and only wrapped in a slice on
+  // demand.
+  byte[] rawBytes;
+  // Integer-encoded VALUE types are kept as longs and only formatted on demand.
+  boolean isIntValue;
+  long intValue;
+  // LZF-compressed raw values are only expanded on first access.
+  byte[] compressedValue;
+  int uncompressedValueLength;
+  long serializedValueSize;
+  // Metadata is kept in primitive fields, with -1 meaning "not set".
+  long expireTime = -1;
+  long idle = -1;
+  int freq = -1;
+  long minHashExpireTime = -1;
 
   /**
    * Returns the key associated with this key/value pair.
    *
+   * <p>Keys stored as integer-encoded strings may share their byte array with other keys and
+   * values, and must not be modified.
+   *
    * @return the key
    */
   public byte[] getKey() {
+    if (key == null) {
+      key = keySlice.toByteArray();
+    }
     return key;
   }
 
+  /**
+   * Returns the key associated with this key/value pair as a {@link ByteSlice}.
+   *
+   * <p>If the parser is in zero-copy mode, the returned slice is only valid until the next call to
+   * {@link RdbParser#readNext}.
+   *
+   * @return the key as a slice
+   */
+  public ByteSlice getKeySlice() {
+    if (keySlice == null) {
+      keySlice = ByteSlice.wrap(key);
+    }
+    return keySlice;
+  }
+
   /**
    * Returns the value type encoding.
    *
@@ -79,51 +115,327 @@ public final class KeyValuePair implements Entry {
    *      a flattened list of key/value/expiration triplets.</li>
    * </ul>
    *
+   * <p>Values stored with an integer encoding are formatted as ASCII. The byte arrays of small
+   * integers are shared, including across key/value pairs, and must not be modified.
+   *
+   * <p>Returns null if the parser is in keys-only mode.
+   *
    * @return the list of values.
    */
   public List<byte[]> getValues() {
+    if (values == null && compressedValue != null) {
+      expandCompressedValue();
+    }
+    if (values == null && isIntValue) {
+      values = Arrays.asList(formatIntValue());
+    } else if (values == null && rawBytes != null) {
+      values = decodeRawValue(valueType, rawBytes);
+    } else if (values == null && rawValue != null) {
+      values = decodeRawValue(valueType, rawValue.toByteArray());
+    }
     return values;
   }
 
   /**
-   * Returns the expire time in milliseconds. If the initial expire time was set in seconds in
-   * redis, the expire time is converted to milliseconds. Returns null if no expire time is set.
+   * <p>Returns the raw serialized value, or null if the value type is not stored as a single
+   * string in the RDB file.
    *
-   * @return the expire time in milliseconds.
+   * <p>For the VALUE type, this is the value itself. For the packed encodings (ZIPMAP, ZIPLIST,
+   * INTSET, SORTED_SET_AS_ZIPLIST, HASHMAP_AS_ZIPLIST, HASHMAP_AS_LISTPACK, SORTED_SET_AS_LISTPACK,
+   * SET_AS_LISTPACK, and HASHMAP_AS_LISTPACK_EX), this is the undecoded envelope. Other value
+   * types return null.
+   *
+   * <p>If the parser is in zero-copy mode, the returned slice is only valid until the next call to
+   * {@link RdbParser#readNext}.
+   *
+   * @return the raw value, or null.
    */
-  public Long getExpireTime() {
-    if (expireTime == null) {
+  public ByteSlice getRawValue() {
+    if (rawValue == null && compressedValue != null) {
+      expandCompressedValue();
+    }
+    if (rawValue == null && rawBytes != null) {
+      rawValue = ByteSlice.wrap(rawBytes);
+    } else if (rawValue == null && isIntValue) {
+      rawValue = ByteSlice.wrap(formatIntValue());
+    }
+    return rawValue;
+  }
+
+  /**
+   * <p>Returns the length in bytes of the raw value (see {@link #getRawValue}), or -1 if the value
+   * type has no raw value or if the parser is in keys-only mode.
+   *
+   * <p>Values that are LZF-compressed in the RDB file are only decompressed when they are first
+   * accessed. For those, this method returns the uncompressed length without decompressing the
+   * value.
+   *
+   * @return the length of the raw value, or -1.
+   */
+  public int getRawValueLength() {
+    if (compressedValue != null) {
+      return uncompressedValueLength;
+    }
+    if (rawBytes != null) {
+      return rawBytes.length;
+    }
+    ByteSlice raw = getRawValue();
+    return raw == null ? -1 : raw.length();
+  }
+
+  private void expandCompressedValue() {
+    byte[] raw = new byte[uncompressedValueLength];
+    Lzf.expand(compressedValue, raw);
+    compressedValue = null;
+    rawBytes = raw;
+  }
+
+  private byte[] formatIntValue() {
+    return IntegerBytes.format(intValue);
+  }
+
+  /**
+   * <p>Returns a cursor over the values associated with this key/value pair, or null if the parser
+   * is in keys-only mode.
+   *
+   * <p>The cursor visits the same values as {@link #getValues}, but exposes integer-encoded values
+   * (e.g., in integer-encoded strings, the elements of lists, sets, and hashes, intsets, ziplists,
+   * listpacks, and quicklists) as longs. For
+   * packed encodings, the values are decoded one at a time straight out of the raw value.
+   *
+   * <p>If the parser is in zero-copy mode, this method must be called before the next call to
+   * {@link RdbParser#readNext}. The returned cursor itself remains valid afterwards.
+   *
+   * @return a new cursor over the values, or null.
+   */
+  public ValueCursor getValueCursor() {
+    if (isIntValue) {
+      return new IntegerCursor(intValue);
+    }
+    List<byte[]> vals = getValues();
+    if (vals == null) {
       return null;
     }
-    switch (expireTime.length) {
-      case 4:
-        return parseExpireTime4Bytes();
-      case 8:
-        return parseExpireTime8Bytes();
+    if (vals instanceof LazyList) {
+      ValueCursor cursor = ((LazyList)vals).cursor();
+      if (cursor != null) {
+        return cursor;
+      }
+    }
+    if (vals instanceof StringList) {
+      return ((StringList)vals).cursor();
+    }
+    return new ListCursor(vals);
+  }
+
+  /**
+   * <p>Returns the integers of an INTSET value as an array of longs, in ascending order, or null if
+   * the value type is not INTSET or if the parser is in keys-only mode.
+   *
+   * <p>The integers are decoded straight from the intset envelope, without going through the
+   * byte-array representation of {@link #getValues}.
+   *
+   * @return the integers in the set, or null.
+   */
+  public long[] getIntSetValues() {
+    IntSet intSet = getIntSet();
+    return intSet == null ? null : intSet.toLongArray();
+  }
+
+  /**
+   * Returns true if the INTSET value contains the given integer. As intsets are sorted, this is a
+   * binary search over the intset envelope, and does not decode the set.
+   *
+   * @param value the integer to look for
+   * @return true if the set contains the value.
+   *
+   * @throws IllegalStateException if the value type is not INTSET or if the parser is in keys-only
+   *     mode.
+   */
+  public boolean intSetContains(long value) {
+    IntSet intSet = getIntSet();
+    if (intSet == null) {
+      throw new IllegalStateException("Not an INTSET value.");
+    }
+    return intSet.contains(value);
+  }
+
+  /**
+   * <p>Returns a cursor over the members and scores of a sorted set, or null if the value type is
+   * not a sorted set or if the parser is in keys-only mode.
+   *
+   * <p>Unlike {@link #getValues}, the cursor returns scores as primitive doubles for all sorted set
+   * encodings, and, for ziplist and listpack encodings, members as slices of the encoded value.
+   *
+   * <p>If the parser is in zero-copy mode, this method must be called before the next call to
+   * {@link RdbParser#readNext}. The returned cursor itself remains valid afterwards.
+   *
+   * @return a new cursor over the sorted set, or null.
+   */
+  public SortedSetCursor getSortedSetCursor() {
+    switch (valueType) {
+      case SORTED_SET:
+      case SORTED_SET2:
+        List<byte[]> vals = getValues();
+        return vals == null ? null
+            : new FlatSortedSetCursor(new ListCursor(vals), valueType == ValueType.SORTED_SET2);
+      case SORTED_SET_AS_ZIPLIST:
+        SortedSetAsZipList zipList = (SortedSetAsZipList)getValues();
+        return zipList == null ? null : zipList.sortedSetCursor();
+      case SORTED_SET_AS_LISTPACK:
+        SortedSetAsListpack listpack = (SortedSetAsListpack)getValues();
+        return listpack == null ? null : listpack.sortedSetCursor();
       default:
-        throw new IllegalStateException("Invalid number of expire time bytes");
+        return null;
     }
   }
 
-  private long parseExpireTime4Bytes() {
-    return 1000L * ( ((long)expireTime[3] & 0xff) << 24
-                   | ((long)expireTime[2] & 0xff) << 16
-                   | ((long)expireTime[1] & 0xff) <<  8
-                   | ((long)expireTime[0] & 0xff) <<  0);
+  private IntSet getIntSet() {
+    if (valueType != ValueType.INTSET) {
+      return null;
+    }
+    return (IntSet)getValues();
   }
 
-  private long parseExpireTime8Bytes() {
-    return ((long)expireTime[7] & 0xff) << 56
-         | ((long)expireTime[6] & 0xff) << 48
-         | ((long)expireTime[5] & 0xff) << 40
-         | ((long)expireTime[4] & 0xff) << 32
-         | ((long)expireTime[3] & 0xff) << 24
-         | ((long)expireTime[2] & 0xff) << 16
-         | ((long)expireTime[1] & 0xff) <<  8
-         | ((long)expireTime[0] & 0xff) <<  0;
+  private static final class IntegerCursor implements ValueCursor {
+    private final long value;
+    private boolean visited = false;
+
+    IntegerCursor(long value) {
+      this.value = value;
+    }
+
+    @Override
+    public boolean next() {
+      if (visited) {
+        return false;
+      }
+      visited = true;
+      return true;
+    }
+
+    @Override
+    public boolean isInteger() {
+      return true;
+    }
+
+    @Override
+    public long getLong() {
+      return value;
+    }
+
+    @Override
+    public byte[] getBytes() {
+      return IntegerBytes.format(value);
+    }
+  }
+
+  private static final class ListCursor implements ValueCursor {
+    private final Iterator<byte[]> values;
+    private byte[] current;
+
+    ListCursor(List<byte[]> values) {
+      this.values = values.iterator();
+    }
+
+    @Override
+    public boolean next() {
+      if (!values.hasNext()) {
+        return false;
+      }
+      current = values.next();
+      return true;
+    }
+
+    @Override
+    public boolean isInteger() {
+      return false;
+    }
+
+    @Override
+    public long getLong() {
+      throw new IllegalStateException("Current value is not an integer.");
+    }
+
+    @Override
+    public byte[] getBytes() {
+      return current;
+    }
+  }
+
+  /**
+   * Returns the number of bytes taken by the serialized value in the RDB file. This size is
+   * available in all modes, including keys-only mode, and does not require decoding the value.
+   *
+   * @return the size in bytes of the serialized value
+   */
+  public long getSerializedValueSize() {
+    return serializedValueSize;
+  }
+
+  static List<byte[]> decodeRawValue(ValueType valueType, byte[] raw) {
+    switch (valueType) {
+      case VALUE:
+        return Arrays.asList(raw);
+      case ZIPMAP:
+        return new ZipMap(raw);
+      case ZIPLIST:
+      case HASHMAP_AS_ZIPLIST:
+        return new ZipList(raw);
+      case INTSET:
+        return new IntSet(raw);
+      case SORTED_SET_AS_ZIPLIST:
+        return new SortedSetAsZipList(raw);
+      case SORTED_SET_AS_LISTPACK:
+        return new SortedSetAsListpack(raw);
+      case HASHMAP_AS_LISTPACK:
+      case SET_AS_LISTPACK:
+      case HASHMAP_AS_LISTPACK_EX:
+      case HASHMAP_AS_LISTPACK_EX_PRE_GA:
+        return new ListpackList(raw);
+      default:
+        throw new IllegalStateException("Value type " + valueType + " has no raw value");
+    }
+  }
+
+  /**
+   * Returns the expire time in milliseconds. If the initial expire time was set in seconds in
+   * redis, the expire time is converted to milliseconds. Returns null if no expire time is set.
+   *
+   * @return the expire time in milliseconds.
+   */
+  public Long getExpireTime() {
+    return expireTime < 0 ? null : Long.valueOf(expireTime);
+  }
+
+  /**
+   * Returns the expire time in milliseconds, or -1 if no expire time is set. Unlike
+   * {@link #getExpireTime}, this method does not box the expire time.
+   *
+   * @return the expire time in milliseconds, or -1.
+   */
+  public long getExpireTimeMillis() {
+    return expireTime;
   }
 
+  /**
+   * Returns the minimum expire time in milliseconds of the fields of a hash with expiration
+   * metadata, or null if not set.
+   *
+   * @return the minimum expire time of the hash fields.
+   */
   public Long getMinHashExpireTime() {
+    long t = getMinHashExpireTimeMillis();
+    return t < 0 ? null : Long.valueOf(t);
+  }
+
+  /**
+   * Returns the minimum expire time in milliseconds of the fields of a hash with expiration
+   * metadata, or -1 if not set.
+   *
+   * @return the minimum expire time of the hash fields, or -1.
+   */
+  public long getMinHashExpireTimeMillis() {
     switch (valueType) {
       case HASHMAP_WITH_METADATA:
       case HASHMAP_WITH_METADATA_PRE_GA:
@@ -131,7 +443,7 @@ public final class KeyValuePair implements Entry {
       case HASHMAP_AS_LISTPACK_EX_PRE_GA:
         return minHashExpireTime;
       default:
-        return null;
+        return -1;
     }
   }
 
@@ -141,6 +453,15 @@ public final class KeyValuePair implements Entry {
    * @return the LFU frequency
    */
   public Integer getFreq() {
+    return freq < 0 ? null : Integer.valueOf(freq);
+  }
+
+  /**
+   * Returns the LFU frequency (logarithmic with a 0-255 range), or -1 if not set.
+   *
+   * @return the LFU frequency, or -1.
+   */
+  public int getLfuFreq() {
     return freq;
   }
 
@@ -150,28 +471,75 @@ public final class KeyValuePair implements Entry {
    * @return the LRU idle time
    */
   public Long getIdle() {
+    return idle < 0 ? null : Long.valueOf(idle);
+  }
+
+  /**
+   * Returns the LRU idle time (in seconds), or -1 if not set.
+   *
+   * @return the LRU idle time, or -1.
+   */
+  public long getIdleSeconds() {
     return idle;
   }
 
+  boolean hasUndecodedValues() {
+    return values instanceof LazyList
+        || (values == null && (rawValue != null || rawBytes != null || compressedValue != null));
+  }
+
+  // Decodes the values, including lazily decoded packed encodings, such that later calls to
+  // getValues do no decoding work.
+  void realizeValues() {
+    List<byte[]> vals = getValues();
+    if (vals instanceof LazyList) {
+      ((LazyList)vals).realizeAll();
+    }
+  }
+
+  void reset() {
+    key = null;
+    keySlice = null;
+    valueType = null;
+    values = null;
+    rawValue = null;
+    rawBytes = null;
+    isIntValue = false;
+    intValue = 0;
+    compressedValue = null;
+    uncompressedValueLength = 0;
+    serializedValueSize = 0;
+    expireTime = -1;
+    idle = -1;
+    freq = -1;
+    minHashExpireTime = -1;
+  }
+
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder();
     sb.append(EntryType.KEY_VALUE_PAIR);
     sb.append(" (key: ");
-    sb.append(StringUtils.getPrintableString(key));
-    if (expireTime != null) {
+    sb.append(StringUtils.getPrintableString(getKey()));
+    if (expireTime >= 0) {
       sb.append(", expire time: ");
-      sb.append(getExpireTime());
+      sb.append(expireTime);
     }
     sb.append(", ");
-    int len = getValues().size();
-    sb.append(len);
-    if (len == 1) {
-      sb.append(" value)");
+    List<byte[]> vals = getValues();
+    if (vals == null) {
+      sb.append(serializedValueSize);
+      sb.append(" value bytes)");
     } else {
-      sb.append(" values)");
+      int len = vals.size();
+      sb.append(len);
+      if (len == 1) {
+        sb.append(" value)");
+      } else {
+        sb.append(" values)");
+      }
     }
-    if (minHashExpireTime != null) {
+    if (minHashExpireTime >= 0) {
       sb.append(", min hash expire time: ");
       sb.append(minHashExpireTime);
     }
@@ -13,29 +13,98 @@
 package net.whitbeck.rdbparser;
 
 import java.util.AbstractSequentialList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.NoSuchElementException;
 
-abstract class LazyList<T> extends AbstractSequentialList<T> {
+abstract class LazyList extends AbstractSequentialList<byte[]> {
 
-  private List<T> list = null;
+  private List<byte[]> list = null;
 
-  protected abstract List<T> realize();
+  protected abstract List<byte[]> realize();
 
-  @Override
-  public ListIterator<T> listIterator(int index) {
-    if (list == null){
+  // Returns a cursor that decodes the values straight from the underlying encoding, or null if the
+  // encoding has no such cursor.
+  ValueCursor cursor() {
+    return null;
+  }
+
+  // Returns the number of values if the encoding stores it up front, or -1 otherwise.
+  int sizeHint() {
+    return -1;
+  }
+
+  // Decodes all the values, such that later accesses do no decoding work.
+  final void realizeAll() {
+    list();
+  }
+
+  private List<byte[]> list() {
+    if (list == null) {
       list = realize();
     }
-    return list.listIterator(index);
+    return list;
+  }
+
+  @Override
+  public Iterator<byte[]> iterator() {
+    // Single passes over the values decode them one at a time, without materializing the list.
+    if (list == null) {
+      ValueCursor cursor = cursor();
+      if (cursor != null) {
+        return new CursorIterator(cursor);
+      }
+    }
+    return list().iterator();
+  }
+
+  @Override
+  public ListIterator<byte[]> listIterator(int index) {
+    return list().listIterator(index);
   }
 
   @Override
   public int size() {
-    if (list == null){
-      list = realize();
+    if (list == null) {
+      int size = sizeHint();
+      if (size >= 0) {
+        return size;
+      }
     }
-    return list.size();
+    return list().size();
   }
 
+  private static final class CursorIterator implements Iterator<byte[]> {
+    private final ValueCursor cursor;
+    private boolean advanced = false;
+    private boolean hasNext;
+
+    CursorIterator(ValueCursor cursor) {
+      this.cursor = cursor;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (!advanced) {
+        hasNext = cursor.next();
+        advanced = true;
+      }
+      return hasNext;
+    }
+
+    @Override
+    public byte[] next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      advanced = false;
+      return cursor.getBytes();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
 }
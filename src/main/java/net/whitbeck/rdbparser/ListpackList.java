@@ -2,11 +2,8 @@ package net.whitbeck.rdbparser;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Arrays;
-import java.nio.charset.Charset;
 
-class ListpackList extends LazyList<byte[]> {
-  private static final Charset ASCII = Charset.forName("ASCII");
+class ListpackList extends LazyList {
 
   // Taken from
   // https://github.com/redis/redis/blob/7.0.11/src/listpack.c#L55-L95C4
@@ -31,21 +28,81 @@ class ListpackList extends LazyList<byte[]> {
   private static final int LP_ENCODING_32BIT_STR = 0xF0;
   private static final int LP_ENCODING_32BIT_STR_MASK = 0xFF;
 
+  // The number of elements is only stored in the header if it is less than 65535.
+  private static final int UNKNOWN_NUM_ELEMENTS = 0xffff;
+
   private final byte[] envelope;
 
   ListpackList(byte[] envelope) {
     this.envelope = envelope;
   }
 
-  private class ListpackParser {
-    private int pos = 0;
-    private List<byte[]> list = new ArrayList<byte[]>();
+  @Override
+  Cursor cursor() {
+    return new Cursor(envelope);
+  }
 
-    private void decodeElement() {
+  @Override
+  int sizeHint() {
+    return numElements(envelope);
+  }
+
+  static int numElements(byte[] envelope) {
+    // The number of elements is a 16-bit little-endian integer after the 32-bit total size.
+    int num = ((int) envelope[4] & 0xff) << 0
+        | ((int) envelope[5] & 0xff) << 8;
+    return num == UNKNOWN_NUM_ELEMENTS ? -1 : num;
+  }
+
+  // Returns the number of elements, counting them if the header does not store it.
+  static int countElements(byte[] envelope) {
+    int num = numElements(envelope);
+    if (num >= 0) {
+      return num;
+    }
+    Cursor cursor = new Cursor(envelope);
+    num = 0;
+    while (cursor.next()) {
+      num += 1;
+    }
+    return num;
+  }
+
+  static final class Cursor extends EnvelopeCursor {
+    private final int numElements;
+    private int idx = 0;
+
+    Cursor(byte[] envelope) {
+      // The structure of the listpack is:
+      // <tot-bytes> <num-elements> <element-1> ... <element-N> <listpack-end-byte>
+      // Where each element is of the structure:
+      // <encoding-type><element-data><element-tot-len>.
+      // Reference: https://github.com/antirez/listpack/blob/master/listpack.md
+
+      // Skip 32-bit integer for the total number of bytes in listpack and the 16-bit number of
+      // elements.
+      super(envelope, 6);
+      numElements = numElements(envelope);
+    }
+
+    @Override
+    public boolean next() {
+      if (numElements < 0 && (envelope[pos] & 0xff) == 0xff) {
+        // The number of elements is unknown and we reached the end byte.
+        return false;
+      }
+      if (idx == numElements) {
+        if ((envelope[pos] & 0xff) != 0xff) {
+          throw new IllegalStateException("Listpack did not end with 0xff byte.");
+        }
+        return false;
+      }
+      idx += 1;
+      int start = pos;
       int b = envelope[pos++] & 0xff;
 
       // Handle the string cases first.
-      int strLen = 0;
+      int strLen = -1;
 
       if ((b & LP_ENCODING_6BIT_STR_MASK) == LP_ENCODING_6BIT_STR) {
         // 10|xxxxxx with x being the str length.
@@ -62,22 +119,22 @@ class ListpackList extends LazyList<byte[]> {
             |     (int)envelope[pos++]         << 24;
       }
 
-      if (strLen > 0) {
+      if (strLen >= 0) {
+        // Empty strings are valid elements.
+        setString(pos, strLen);
         pos += strLen;
-        list.add(Arrays.copyOfRange(envelope, pos - strLen, pos));
-        pos += getLenBytes(strLen);
-        return;
+        pos += getBacklenBytes(pos - start);
+        return true;
       }
 
       // Handle the ints.
       long val, negStart, negMax;
 
       if ((b & LP_ENCODING_7BIT_UINT_MASK) == LP_ENCODING_7BIT_UINT) {
-        // Small number encoded in a single byte.
-        list.add(String.valueOf(b & ~LP_ENCODING_7BIT_UINT_MASK).getBytes(ASCII));
+        // Small number encoded in a single byte, never negative.
+        setInt(b & ~LP_ENCODING_7BIT_UINT_MASK);
         pos++;
-        // Return immediately since 7-bit ints are never negative.
-        return;
+        return true;
       } else if ((b & LP_ENCODING_13BIT_INT_MASK) == LP_ENCODING_13BIT_INT) { // 110|xxxxxx
         // yyyyyyyy
         val = (b & 0xff & ~LP_ENCODING_13BIT_INT_MASK) << 8 | envelope[pos++] & 0xff;
@@ -107,9 +164,9 @@ class ListpackList extends LazyList<byte[]> {
             | ((long) envelope[pos++] & 0xff) << 48
             | ((long) envelope[pos++] & 0xff) << 56;
         // Since a long is 64 bits, no negative correction is needed.
-        list.add(String.valueOf(val).getBytes(ASCII));
+        setInt(val);
         pos++;
-        return;
+        return true;
       } else {
         throw new RuntimeException("Invalid listpack envelope encoding");
       }
@@ -123,17 +180,20 @@ class ListpackList extends LazyList<byte[]> {
       }
       // Ints always have a entity size of one byte.
       pos++;
-      list.add(String.valueOf(val).getBytes(ASCII));
+      setInt(val);
+      return true;
     }
 
-    private int getLenBytes(int len) {
-      if (len < 128) {
+    // Returns the number of bytes of the back-length that follows an element of the given
+    // length (encoding and data), see lpEncodeBacklen in listpack.c.
+    private static int getBacklenBytes(int len) {
+      if (len <= 127) {
         return 1;
-      } else if (len < 16384) {
+      } else if (len < 16383) {
         return 2;
-      } else if (len < 2097152) {
+      } else if (len < 2097151) {
         return 3;
-      } else if (len < 268435456) {
+      } else if (len < 268435455) {
         return 4;
       } else {
         return 5;
@@ -143,24 +203,11 @@ class ListpackList extends LazyList<byte[]> {
 
   @Override
   protected List<byte[]> realize() {
-    // The structure of the listpack is:
-    // <tot-bytes> <num-elements> <element-1> ... <element-N> <listpack-end-byte>
-    // Where each element is of the structure:
-    // <encoding-type><element-data><element-tot-len>.
-    // Reference: https://github.com/antirez/listpack/blob/master/listpack.md
-
-    ListpackParser listpackParser = new ListpackParser();
-    // Skip 32-bit integer for the total number of bytes in listpack.
-    listpackParser.pos += 4;
-    int numElements = ((int) envelope[listpackParser.pos++] & 0xff) << 0
-        | ((int) envelope[listpackParser.pos++] & 0xff) << 8;
-
-    for (int i = 0; i < numElements; i++) {
-      listpackParser.decodeElement();
-    }
-    if ((envelope[listpackParser.pos] & 0xff) != 0xff) {
-      throw new IllegalStateException("Listpack did not end with 0xff byte.");
+    Cursor cursor = cursor();
+    List<byte[]> list = new ArrayList<byte[]>(Math.max(0, sizeHint()));
+    while (cursor.next()) {
+      list.add(cursor.getBytes());
     }
-    return listpackParser.list;
+    return list;
   }
 }
@@ -12,20 +12,45 @@
 
 package net.whitbeck.rdbparser;
 
+import java.util.Arrays;
+
 // adapted from https://github.com/ganghuawang/java-redis-rdb
 final class Lzf {
 
   // The maximum number of literals in a chunk (32).
-  private static int MAX_LITERAL = 32;
+  private static final int MAX_LITERAL = 32;
 
   static void expand(byte[] src, byte[] dest) {
-    int srcPos = 0;
+    expand(src, 0, src.length, dest);
+  }
+
+  /**
+   * Expands the {@code srcLen} bytes of LZF-compressed data starting at {@code srcOff} into
+   * {@code dest}, which must be exactly as long as the uncompressed data.
+   *
+   * @throws IllegalStateException if the compressed data is corrupt, i.e., if it references bytes
+   *     outside of src or dest, or does not expand to exactly dest.length bytes with all of its
+   *     srcLen bytes.
+   */
+  static void expand(byte[] src, int srcOff, int srcLen, byte[] dest) {
+    if (srcOff < 0 || srcLen < 0 || srcOff + srcLen > src.length || srcOff + srcLen < 0) {
+      throw new IllegalArgumentException("Invalid LZF source range.");
+    }
+    int srcPos = srcOff;
+    int srcEnd = srcOff + srcLen;
     int destPos = 0;
-    do {
+    int destEnd = dest.length;
+    while (destPos < destEnd) {
+      if (srcPos >= srcEnd) {
+        throw corrupt("truncated input");
+      }
       int ctrl = src[srcPos++] & 0xff;
       if (ctrl < MAX_LITERAL) {
         // literal run of length = ctrl + 1,
         ctrl++;
+        if (srcPos + ctrl > srcEnd || destPos + ctrl > destEnd) {
+          throw corrupt("literal run out of bounds");
+        }
         // copy to output and move forward this many bytes
         System.arraycopy(src, srcPos, dest, destPos, ctrl);
         destPos += ctrl;
@@ -36,27 +61,49 @@ final class Lzf {
         int len = ctrl >> 5;
         // if the length is maxed, add the next byte to the length
         if (len == 7) {
+          if (srcPos >= srcEnd) {
+            throw corrupt("truncated input");
+          }
           len += src[srcPos++] & 0xff;
         }
         /* minimum back-reference is 3 bytes,
            so 2 was subtracted before storing size */
         len += 2;
-
-        /* ctrl is now the offset for a back-reference...
-           the logical AND operation removes the length bits */
-        ctrl = -((ctrl & 0x1f) << 8) - 1;
-
-        // the next byte augments/increases the offset
-        ctrl -= src[srcPos++] & 0xff;
-
-        /* copy the back-reference bytes from the given
-           location in output to current position */
-        ctrl += destPos;
-        for (int i = 0; i < len; i++) {
-          dest[destPos++] = dest[ctrl++];
+        if (srcPos >= srcEnd) {
+          throw corrupt("truncated input");
+        }
+        // the offset is stored on the low 5 bits of ctrl and on the next byte
+        int distance = (((ctrl & 0x1f) << 8) | (src[srcPos++] & 0xff)) + 1;
+        int ref = destPos - distance;
+        if (ref < 0 || destPos + len > destEnd) {
+          throw corrupt("back reference out of bounds");
         }
+        if (distance >= len) {
+          // The source and destination ranges don't overlap.
+          System.arraycopy(dest, ref, dest, destPos, len);
+        } else if (distance == 1) {
+          // A run of the same byte.
+          Arrays.fill(dest, destPos, destPos + len, dest[ref]);
+        } else {
+          /* The reference overlaps the bytes being written, i.e., it repeats the last distance
+             bytes. Copy them in chunks that double in size as the repeated pattern grows. */
+          int end = destPos + len;
+          int pos = destPos;
+          while (pos < end) {
+            int n = Math.min(pos - ref, end - pos);
+            System.arraycopy(dest, ref, dest, pos, n);
+            pos += n;
+          }
+        }
+        destPos += len;
       }
-    } while (destPos < dest.length);
+    }
+    if (srcPos != srcEnd) {
+      throw corrupt("trailing input");
+    }
   }
 
+  private static IllegalStateException corrupt(String reason) {
+    return new IllegalStateException("Corrupt LZF data: " + reason + ".");
+  }
 }
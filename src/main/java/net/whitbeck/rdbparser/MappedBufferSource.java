@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Maps successive windows of a file into memory. Each window is at most {@code windowSize} bytes
+ * long, so that files larger than 2GB can be read. The windows are released by the garbage
+ * collector once the parser moves past them.
+ */
+final class MappedBufferSource implements BufferSource {
+
+  static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private final FileChannel ch;
+  private final int windowSize;
+  private final long size;
+  private long position;
+
+  MappedBufferSource(FileChannel ch, int windowSize) throws IOException {
+    if (windowSize <= 0) {
+      throw new IllegalArgumentException("Window size must be positive.");
+    }
+    this.ch = ch;
+    this.windowSize = windowSize;
+    this.size = ch.size();
+    this.position = ch.position();
+  }
+
+  @Override
+  public ByteBuffer next() throws IOException {
+    if (position >= size) {
+      return null;
+    }
+    long len = Math.min(windowSize, size - position);
+    ByteBuffer window = ch.map(FileChannel.MapMode.READ_ONLY, position, len);
+    position += len;
+    return window;
+  }
+
+  @Override
+  public long skip(long numBytes) {
+    long skipped = Math.min(numBytes, size - position);
+    position += skipped;
+    return skipped;
+  }
+
+  @Override
+  public void seek(long position) {
+    if (position < 0 || position > size) {
+      throw new IllegalArgumentException("Position " + position + " is outside of the file.");
+    }
+    this.position = position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    ch.close();
+  }
+}
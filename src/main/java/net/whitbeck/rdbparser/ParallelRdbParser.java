@@ -0,0 +1,263 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Parses a single RDB file on several threads.
+ *
+ * <p>A boundary thread scans the file in keys-only mode, skipping over values by their length
+ * prefixes, and splits it into chunks of consecutive entries of roughly {@code chunkSize} bytes.
+ * Each chunk is then parsed by a worker thread from its own memory-mapped view of the file. Lazily
+ * decoded values (ziplists, listpacks, intsets, quicklists, etc.) are fully decoded on the worker
+ * threads, such that the decoding work, which dominates for dumps of packed encodings, is spread
+ * across all workers.
+ *
+ * <p>Entries are returned by {@link #readNext} either in file order or, if ordering is not
+ * required, chunk by chunk in the order in which the workers complete them. In both cases, the
+ * entries within a chunk are returned in file order. In unordered mode, each chunk that does not
+ * start at a database boundary is preceded by a repeated {@link SelectDb} entry, such that the last
+ * SelectDb entry returned always identifies the database of the following keys.
+ *
+ * <p>At most two chunks per worker thread are parsed ahead of the consumer. Closing the parser
+ * stops all threads.
+ *
+ * <p>ParallelRdbParser instances are not thread safe.
+ *
+ * @author John Whitbeck
+ */
+public final class ParallelRdbParser implements AutoCloseable {
+
+  static final long DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+  private static final List<Entry> END = Collections.emptyList();
+
+  private final Path path;
+  private final boolean ordered;
+  private final long chunkSize;
+  private final ExecutorService workers;
+  private final Thread boundaryThread;
+  private final Semaphore inFlight;
+  private final BlockingQueue<Future<List<Entry>>> results =
+      new LinkedBlockingQueue<Future<List<Entry>>>();
+  // In unordered mode, counts the running tasks plus one for the boundary thread, such that the end
+  // marker is enqueued by whichever finishes last.
+  private final AtomicInteger pending = new AtomicInteger(1);
+  private Iterator<Entry> current = Collections.<Entry>emptyList().iterator();
+  private boolean done = false;
+
+  /**
+   * Creates a parser that returns the entries of the file in order.
+   *
+   * @param path the RDB file
+   * @param numThreads the number of worker threads
+   */
+  public ParallelRdbParser(Path path, int numThreads) {
+    this(path, numThreads, true, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Creates a parallel parser.
+   *
+   * @param path the RDB file
+   * @param numThreads the number of worker threads
+   * @param ordered whether to return entries in file order
+   * @param chunkSize the approximate size in bytes of the chunks handed to worker threads
+   */
+  public ParallelRdbParser(Path path, int numThreads, boolean ordered, long chunkSize) {
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive.");
+    }
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive.");
+    }
+    this.path = path;
+    this.ordered = ordered;
+    this.chunkSize = chunkSize;
+    this.inFlight = new Semaphore(2 * numThreads);
+    this.workers = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "rdb-parser-worker-" + count.getAndIncrement());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    this.boundaryThread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          findBoundaries();
+        }
+      }, "rdb-parser-boundaries");
+    boundaryThread.setDaemon(true);
+    boundaryThread.start();
+  }
+
+  private void findBoundaries() {
+    try (ChunkScanner scanner = new ChunkScanner(path, chunkSize)) {
+      ChunkScanner.Chunk chunk;
+      while ((chunk = scanner.next()) != null) {
+        submit(chunk);
+      }
+    } catch (InterruptedException e) {
+      // The parser was closed.
+      return;
+    } catch (final Throwable t) {
+      FutureTask<List<Entry>> failed = new FutureTask<List<Entry>>(new Callable<List<Entry>>() {
+          @Override
+          public List<Entry> call() throws Exception {
+            if (t instanceof Exception) {
+              throw (Exception)t;
+            }
+            throw (Error)t;
+          }
+        });
+      failed.run();
+      results.add(failed);
+      if (ordered) {
+        return;
+      }
+    }
+    if (ordered) {
+      results.add(completed(END));
+    } else if (pending.decrementAndGet() == 0) {
+      results.add(completed(END));
+    }
+  }
+
+  private void submit(final ChunkScanner.Chunk chunk) throws InterruptedException {
+    inFlight.acquire();
+    Callable<List<Entry>> task = new Callable<List<Entry>>() {
+        @Override
+        public List<Entry> call() throws IOException {
+          return parseChunk(chunk);
+        }
+      };
+    if (ordered) {
+      results.add(workers.submit(task));
+    } else {
+      pending.incrementAndGet();
+      workers.execute(new FutureTask<List<Entry>>(task) {
+          @Override
+          protected void done() {
+            results.add(this);
+            if (pending.decrementAndGet() == 0) {
+              results.add(completed(END));
+            }
+          }
+        });
+    }
+  }
+
+  private List<Entry> parseChunk(ChunkScanner.Chunk chunk) throws IOException {
+    int windowSize = (int)Math.max(1, Math.min(chunk.numBytes,
+                                               MappedBufferSource.DEFAULT_WINDOW_SIZE));
+    List<Entry> entries = new ArrayList<Entry>(chunk.numEntries + 1);
+    // In unordered mode, chunks that start in the middle of a database repeat its SelectDb entry.
+    if (!ordered && chunk.midDb) {
+      entries.add(new SelectDb(chunk.start.getDb()));
+    }
+    try (RdbParser parser = RdbParser.memoryMapped(path, windowSize)) {
+      if (chunk.start != null) {
+        parser.resume(chunk.start);
+      }
+      for (int i = 0; i < chunk.numEntries; ++i) {
+        Entry entry = parser.readNext();
+        if (entry.getType() == EntryType.KEY_VALUE_PAIR) {
+          ((KeyValuePair)entry).realizeValues();
+        }
+        entries.add(entry);
+      }
+    }
+    return entries;
+  }
+
+  private static Future<List<Entry>> completed(List<Entry> entries) {
+    FutureTask<List<Entry>> f = new FutureTask<List<Entry>>(new Runnable() {
+        @Override
+        public void run() {}
+      }, entries);
+    f.run();
+    return f;
+  }
+
+  /**
+   * Returns the next entry, or null once all entries have been returned.
+   *
+   * @return the next entry, or null.
+   *
+   * @throws IOException if a worker or the boundary thread failed to read the file.
+   */
+  public Entry readNext() throws IOException {
+    while (!current.hasNext()) {
+      if (done) {
+        return null;
+      }
+      List<Entry> entries;
+      try {
+        entries = results.take().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for a worker thread.");
+      } catch (ExecutionException e) {
+        done = true;
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException)cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException)cause;
+        } else if (cause instanceof Error) {
+          throw (Error)cause;
+        }
+        throw new IOException(cause);
+      }
+      if (entries == END) {
+        done = true;
+        return null;
+      }
+      inFlight.release();
+      current = entries.iterator();
+    }
+    return current.next();
+  }
+
+  /**
+   * Stops the boundary and worker threads.
+   */
+  @Override
+  public void close() {
+    done = true;
+    boundaryThread.interrupt();
+    workers.shutdownNow();
+  }
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * <p>Overlaps reading and decoding by running an {@link RdbParser} on a dedicated reader thread and
+ * decoding its entries on a fork-join pool.
+ *
+ * <p>The reader thread only frames entries. Key/value pairs whose values are stored in packed
+ * encodings (ziplists, listpacks, intsets, zipmaps, quicklists, etc.) are handed over to the pool,
+ * which decodes them ahead of the consumer. {@link #readNext} returns entries in file order, with
+ * their values fully decoded.
+ *
+ * <p>At most {@code depth} entries are read ahead of the consumer. Closing the pipelined parser
+ * stops the reader thread and closes the underlying parser.
+ *
+ * <p>PipelinedRdbParser instances are not thread safe.
+ *
+ * @author John Whitbeck
+ */
+public final class PipelinedRdbParser implements AutoCloseable {
+
+  private static final Slot END = new Slot(null, null, null);
+
+  private final RdbParser parser;
+  private final ForkJoinPool pool;
+  private final boolean ownsPool;
+  private final BlockingQueue<Slot> slots;
+  private final Thread reader;
+  private volatile boolean closed = false;
+  private boolean done = false;
+
+  /**
+   * Creates a pipelined parser that decodes entries on a new fork-join pool with as many threads as
+   * there are available processors. The pool is shut down when the pipelined parser is closed.
+   *
+   * @param parser the parser to read entries from
+   * @param depth the maximum number of entries to read ahead of the consumer
+   */
+  public PipelinedRdbParser(RdbParser parser, int depth) {
+    this(parser, new ForkJoinPool(), true, depth);
+  }
+
+  /**
+   * Creates a pipelined parser that decodes entries on the given fork-join pool.
+   *
+   * @param parser the parser to read entries from
+   * @param pool the pool to decode entries on
+   * @param depth the maximum number of entries to read ahead of the consumer
+   */
+  public PipelinedRdbParser(RdbParser parser, ForkJoinPool pool, int depth) {
+    this(parser, pool, false, depth);
+  }
+
+  private PipelinedRdbParser(RdbParser parser, ForkJoinPool pool, boolean ownsPool, int depth) {
+    if (depth <= 0) {
+      throw new IllegalArgumentException("Depth must be positive.");
+    }
+    String unsupported = unsupportedMode(parser);
+    if (unsupported != null) {
+      throw new IllegalArgumentException(unsupported);
+    }
+    this.parser = parser;
+    this.pool = pool;
+    this.ownsPool = ownsPool;
+    this.slots = new ArrayBlockingQueue<Slot>(depth);
+    this.reader = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          readLoop();
+        }
+      }, "rdb-parser-pipeline");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  private static final class Slot {
+    final Entry entry;
+    final ForkJoinTask<?> decoding;
+    final Throwable error;
+
+    Slot(Entry entry, ForkJoinTask<?> decoding, Throwable error) {
+      this.entry = entry;
+      this.decoding = decoding;
+      this.error = error;
+    }
+  }
+
+  // Entries are handed over to other threads, so they must neither point into the parser's
+  // buffers nor be refilled by the next read.
+  private static String unsupportedMode(RdbParser parser) {
+    if (parser.isZeroCopy()) {
+      return "Zero-copy parsers cannot be pipelined.";
+    }
+    if (parser.isReusingEntries()) {
+      return "Parsers in reuse mode cannot be pipelined.";
+    }
+    return null;
+  }
+
+  private void readLoop() {
+    try {
+      while (true) {
+        // The modes of the underlying parser can still be changed after construction.
+        String unsupported = unsupportedMode(parser);
+        if (unsupported != null) {
+          throw new IllegalStateException(unsupported);
+        }
+        Entry entry = parser.readNext();
+        if (entry == null) {
+          break;
+        }
+        ForkJoinTask<?> decoding = null;
+        if (entry.getType() == EntryType.KEY_VALUE_PAIR) {
+          final KeyValuePair kvp = (KeyValuePair)entry;
+          if (kvp.hasUndecodedValues()) {
+            decoding = pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                  kvp.realizeValues();
+                }
+              });
+          }
+        }
+        slots.put(new Slot(entry, decoding, null));
+      }
+      slots.put(END);
+    } catch (InterruptedException e) {
+      // The pipelined parser was closed.
+    } catch (Throwable t) {
+      if (!closed) {
+        try {
+          slots.put(new Slot(null, null, t));
+        } catch (InterruptedException e) {
+          // The pipelined parser was closed.
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the next entry, or null once all entries have been returned.
+   *
+   * @return the next entry, or null.
+   *
+   * @throws IOException if the underlying parser failed to read an entry.
+   */
+  public Entry readNext() throws IOException {
+    if (done) {
+      return null;
+    }
+    Slot slot;
+    try {
+      slot = slots.take();
+      if (slot.decoding != null) {
+        slot.decoding.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the pipeline.");
+    } catch (ExecutionException e) {
+      done = true;
+      throw rethrow(e.getCause());
+    }
+    if (slot == END) {
+      done = true;
+      return null;
+    }
+    if (slot.error != null) {
+      done = true;
+      throw rethrow(slot.error);
+    }
+    return slot.entry;
+  }
+
+  private static IOException rethrow(Throwable t) throws IOException {
+    if (t instanceof IOException) {
+      throw (IOException)t;
+    } else if (t instanceof RuntimeException) {
+      throw (RuntimeException)t;
+    } else if (t instanceof Error) {
+      throw (Error)t;
+    }
+    return new IOException(t);
+  }
+
+  /**
+   * Stops the reader thread and closes the underlying parser.
+   *
+   * @throws IOException from closing the underlying parser.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    done = true;
+    reader.interrupt();
+    try {
+      parser.close();
+    } finally {
+      if (ownsPool) {
+        pool.shutdownNow();
+      }
+    }
+  }
+}
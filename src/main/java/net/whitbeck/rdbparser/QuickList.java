@@ -15,19 +15,44 @@ package net.whitbeck.rdbparser;
 import java.util.ArrayList;
 import java.util.List;
 
-final class QuickList extends LazyList<byte[]> {
+final class QuickList extends LazyList {
 
   private final List<byte[]> ziplists;
+  private int size = -1;
 
   QuickList(List<byte[]> ziplists) {
     this.ziplists = ziplists;
   }
 
+  @Override
+  ValueCursor cursor() {
+    return new ChainedCursor(ziplists.size()) {
+        @Override
+        ValueCursor cursor(int node) {
+          return new ZipList.Cursor(ziplists.get(node));
+        }
+      };
+  }
+
+  @Override
+  int sizeHint() {
+    // Sum the element counts in the ziplist headers, without decoding the ziplists.
+    if (size < 0) {
+      int n = 0;
+      for (byte[] envelope : ziplists) {
+        n += ZipList.countElements(envelope);
+      }
+      size = n;
+    }
+    return size;
+  }
+
   @Override
   protected List<byte[]> realize() {
-    List<byte[]> list = new ArrayList<byte[]>();
-    for (byte[] envelope : ziplists) {
-      list.addAll(new ZipList(envelope).realize());
+    List<byte[]> list = new ArrayList<byte[]>(sizeHint());
+    ValueCursor cursor = cursor();
+    while (cursor.next()) {
+      list.add(cursor.getBytes());
     }
     return list;
   }
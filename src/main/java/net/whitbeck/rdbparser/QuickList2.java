@@ -13,21 +13,77 @@
 package net.whitbeck.rdbparser;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
-final class QuickList2 extends LazyList<byte[]> {
-  private final List<byte[]> listpacks;
+final class QuickList2 extends LazyList {
 
-  QuickList2(List<byte[]> listpacks) {
-    this.listpacks = listpacks;
+  // Container format of the nodes that hold a single large element as is, instead of a listpack.
+  // See QUICKLIST_NODE_CONTAINER_PLAIN in redis' quicklist.h.
+  static final int CONTAINER_PLAIN = 1;
+
+  private final List<byte[]> nodes;
+  private final BitSet plainNodes;
+  private int size = -1;
+
+  QuickList2(List<byte[]> nodes, BitSet plainNodes) {
+    this.nodes = nodes;
+    this.plainNodes = plainNodes;
+  }
+
+  @Override
+  ValueCursor cursor() {
+    return new ChainedCursor(nodes.size()) {
+        @Override
+        ValueCursor cursor(int node) {
+          byte[] envelope = nodes.get(node);
+          if (plainNodes.get(node)) {
+            return new PlainCursor(envelope);
+          }
+          return new ListpackList.Cursor(envelope);
+        }
+      };
+  }
+
+  @Override
+  int sizeHint() {
+    // Sum the element counts in the listpack headers, without decoding the listpacks.
+    if (size < 0) {
+      int n = 0;
+      for (int i = 0; i < nodes.size(); ++i) {
+        n += plainNodes.get(i) ? 1 : ListpackList.countElements(nodes.get(i));
+      }
+      size = n;
+    }
+    return size;
   }
 
   @Override
   protected List<byte[]> realize() {
-    List<byte[]> list = new ArrayList<byte[]>();
-    for (byte[] listpack : listpacks) {
-      list.addAll(new ListpackList(listpack).realize());
+    List<byte[]> list = new ArrayList<byte[]>(sizeHint());
+    ValueCursor cursor = cursor();
+    while (cursor.next()) {
+      list.add(cursor.getBytes());
     }
     return list;
   }
+
+  private static final class PlainCursor extends EnvelopeCursor {
+
+    private boolean visited = false;
+
+    PlainCursor(byte[] element) {
+      super(element, 0);
+    }
+
+    @Override
+    public boolean next() {
+      if (visited) {
+        return false;
+      }
+      visited = true;
+      setString(0, envelope.length);
+      return true;
+    }
+  }
 }
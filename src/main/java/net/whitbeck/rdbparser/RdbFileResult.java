@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.nio.file.Path;
+
+/**
+ * <p>The outcome of parsing a single file with a {@link BatchRdbParser}: either the value returned
+ * by the {@link RdbFileTask}, or the exception that made the file fail.
+ *
+ * @param <R> the type of the per-file results
+ *
+ * @author John Whitbeck
+ */
+public final class RdbFileResult<R> {
+
+  private final Path path;
+  private final RdbHeader header;
+  private final R value;
+  private final Exception error;
+
+  RdbFileResult(Path path, RdbHeader header, R value, Exception error) {
+    this.path = path;
+    this.header = header;
+    this.value = value;
+    this.error = error;
+  }
+
+  /**
+   * Returns the path of the RDB file.
+   *
+   * @return the path
+   */
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Returns the header of the file, or null if the file failed before its header was read.
+   *
+   * @return the header, or null
+   */
+  public RdbHeader getHeader() {
+    return header;
+  }
+
+  /**
+   * Returns true if the file was parsed without error.
+   *
+   * @return true on success
+   */
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+  /**
+   * Returns the value returned by the task, or null if the file failed.
+   *
+   * @return the value, or null
+   */
+  public R getValue() {
+    return value;
+  }
+
+  /**
+   * Returns the exception that made the file fail, or null on success.
+   *
+   * @return the exception, or null
+   */
+  public Exception getError() {
+    return error;
+  }
+
+  @Override
+  public String toString() {
+    return isSuccess()
+        ? String.format("%s (value: %s)", path, value)
+        : String.format("%s (error: %s)", path, error);
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+/**
+ * <p>The work done on each file by a {@link BatchRdbParser}.
+ *
+ * <p>Tasks are called concurrently from several threads, one file per call, and should therefore
+ * only share thread-safe state. Results that do not need to be shared while parsing are best
+ * returned from {@link #parse}, in which case {@link BatchRdbParser#parseAll} hands them back to
+ * the calling thread.
+ *
+ * @param <R> the type of the per-file results
+ *
+ * @author John Whitbeck
+ * @see BatchRdbParser
+ */
+public interface RdbFileTask<R> {
+
+  /**
+   * Parses a single RDB file.
+   *
+   * <p>This method is called as soon as the header of the file has been read. The given parser is
+   * positioned right after the aux fields of the header, such that its next entry is the first
+   * {@link SelectDb} (or the {@link Eof} of an empty file). Parsing modes such as
+   * {@link RdbParser#setKeysOnly} can still be set. The parser is closed once this method
+   * returns.
+   *
+   * @param header the RDB version and aux fields of the file
+   * @param parser the parser of the file
+   * @return the result for this file
+   * @throws Exception if parsing the file fails. The exception is recorded in the file's result and
+   *     does not affect the other files.
+   */
+  R parse(RdbHeader header, RdbParser parser) throws Exception;
+}
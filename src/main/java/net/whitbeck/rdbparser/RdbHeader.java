@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>The header of an RDB file parsed by a {@link BatchRdbParser}: its RDB version and the
+ * {@link AuxField} entries that precede its first database.
+ *
+ * @author John Whitbeck
+ */
+public final class RdbHeader {
+
+  private final Path path;
+  private final int rdbVersion;
+  private final List<AuxField> auxFields;
+
+  RdbHeader(Path path, int rdbVersion, List<AuxField> auxFields) {
+    this.path = path;
+    this.rdbVersion = rdbVersion;
+    this.auxFields = Collections.unmodifiableList(auxFields);
+  }
+
+  /**
+   * Returns the path of the RDB file.
+   *
+   * @return the path
+   */
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Returns the RDB version of the file.
+   *
+   * @return the RDB version
+   */
+  public int getRdbVersion() {
+    return rdbVersion;
+  }
+
+  /**
+   * Returns the aux fields of the file, in file order. Empty for RDB versions prior to 7.
+   *
+   * @return the aux fields
+   */
+  public List<AuxField> getAuxFields() {
+    return auxFields;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s (version: %d, aux fields: %d)", path, rdbVersion, auxFields.size());
+  }
+}
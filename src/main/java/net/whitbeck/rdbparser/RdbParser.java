@@ -15,8 +15,11 @@ package net.whitbeck.rdbparser;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.ByteChannel;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
@@ -24,8 +27,13 @@ import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <p>Reads entries from a Redis RDB file, one at a time.
@@ -49,24 +57,42 @@ public final class RdbParser implements AutoCloseable {
   private static final int FUNCTION2 = 0xf5;
   private static final int SLOT_INFO = 0xf4;
 
-  private static final int BUFFER_SIZE = 8 * 1024;
+  private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
 
-  private final ReadableByteChannel ch;
-  private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final BufferSource source;
+  private ByteBuffer buf = EMPTY_BUFFER;
 
   /* Parsing state */
   private int version;
   private long bytesBuffered = 0;
   private boolean isInitialized = false;
   private KeyValuePair nextEntry = null;
+  private boolean resetNextEntry = false;
   private boolean hasNext = false;
+  private long currentDb = 0;
+  private long lastEntryOffset = -1;
+
+  /* Options */
+  private boolean zeroCopy = false;
+  private boolean keysOnly = false;
+  private boolean reuseEntries = false;
+  private EntryFilter filter = null;
+  private RdbVisitor visitor = null;
+
+  /* Reuse mode buffers */
+  private final SliceBuffer keyBuffer = new SliceBuffer();
+  private final SliceBuffer valueBuffer = new SliceBuffer();
+
+  private RdbParser(BufferSource source) {
+    this.source = source;
+  }
 
   public RdbParser(ReadableByteChannel ch) {
-    this.ch = ch;
+    this(new ChannelBufferSource(ch));
   }
 
   public RdbParser(Path path) throws IOException {
-    this.ch = FileChannel.open(path, StandardOpenOption.READ);
+    this(FileChannel.open(path, StandardOpenOption.READ));
   }
 
   public RdbParser(File file) throws IOException {
@@ -81,6 +107,267 @@ public final class RdbParser implements AutoCloseable {
     this(new File(filename));
   }
 
+  /**
+   * <p>Returns a parser that reads the file through memory-mapped windows of its FileChannel
+   * instead of copying it through an intermediate buffer.
+   *
+   * <p>Files of any size, including those larger than 2GB, are supported as windows are mapped one
+   * after the other as parsing progresses.
+   *
+   * @param path the RDB file
+   * @return a parser over the memory-mapped file
+   *
+   * @throws IOException if the file cannot be opened or mapped.
+   */
+  public static RdbParser memoryMapped(Path path) throws IOException {
+    return memoryMapped(path, MappedBufferSource.DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Returns a parser that reads the file through memory-mapped windows of its FileChannel.
+   *
+   * @param file the RDB file
+   * @return a parser over the memory-mapped file
+   *
+   * @throws IOException if the file cannot be opened or mapped.
+   *
+   * @see #memoryMapped(Path)
+   */
+  public static RdbParser memoryMapped(File file) throws IOException {
+    return memoryMapped(file.toPath());
+  }
+
+  /**
+   * Returns a parser that reads the file through memory-mapped windows of at most
+   * {@code windowSize} bytes.
+   *
+   * @param path the RDB file
+   * @param windowSize the maximum size in bytes of each mapped window
+   * @return a parser over the memory-mapped file
+   *
+   * @throws IOException if the file cannot be opened or mapped.
+   *
+   * @see #memoryMapped(Path)
+   */
+  public static RdbParser memoryMapped(Path path, int windowSize) throws IOException {
+    FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new RdbParser(new MappedBufferSource(ch, windowSize));
+    } catch (IOException | RuntimeException e) {
+      ch.close();
+      throw e;
+    }
+  }
+
+  /**
+   * <p>Returns a parser that reads the channel ahead of parsing on a dedicated I/O thread.
+   *
+   * <p>The I/O thread fills a ring of {@code numBuffers} buffers of {@code bufferSize} bytes each
+   * and hands them over to the parser as they fill up, such that reading from slow channels (e.g.,
+   * pipes or network volumes) overlaps with parsing. Closing the parser stops the I/O thread and
+   * closes the channel.
+   *
+   * @param ch the channel to read the RDB file from
+   * @param numBuffers the number of buffers in the ring (at least 2)
+   * @param bufferSize the size in bytes of each buffer
+   * @return a parser that reads the channel ahead of parsing
+   */
+  public static RdbParser readAhead(ReadableByteChannel ch, int numBuffers, int bufferSize) {
+    return new RdbParser(new ReadAheadBufferSource(ch, numBuffers, bufferSize));
+  }
+
+  /**
+   * Returns a parser that reads the input stream ahead of parsing on a dedicated I/O thread.
+   *
+   * @param inputStream the input stream to read the RDB file from
+   * @param numBuffers the number of buffers in the ring (at least 2)
+   * @param bufferSize the size in bytes of each buffer
+   * @return a parser that reads the input stream ahead of parsing
+   *
+   * @see #readAhead(ReadableByteChannel, int, int)
+   */
+  public static RdbParser readAhead(InputStream inputStream, int numBuffers, int bufferSize) {
+    return readAhead(Channels.newChannel(inputStream), numBuffers, bufferSize);
+  }
+
+  /**
+   * <p>Returns a parser that reads a gzip-compressed RDB file, inflating it on up to
+   * {@code numThreads} threads.
+   *
+   * <p>Single-member gzip files are inflated sequentially through large buffers. Multi-member gzip
+   * files (e.g., as written by pigz or by concatenating gzip files) are inflated in parallel: worker
+   * threads speculatively inflate the members that follow the current one, and their output is
+   * handed to the parser once the preceding members have been read. Each member is checked against
+   * the CRC32 and size in its trailer.
+   *
+   * @param path the gzip-compressed RDB file
+   * @param numThreads the number of threads to inflate members on
+   * @return a parser over the inflated file
+   *
+   * @throws IOException if the file cannot be opened.
+   */
+  public static RdbParser gzip(Path path, int numThreads) throws IOException {
+    FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new RdbParser(new GzipBufferSource(ch, numThreads,
+                                                GzipBufferSource.DEFAULT_BUFFER_SIZE));
+    } catch (RuntimeException e) {
+      ch.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns a parser that reads a gzip-compressed RDB file, inflating it on as many threads as
+   * there are available processors.
+   *
+   * @param path the gzip-compressed RDB file
+   * @return a parser over the inflated file
+   *
+   * @throws IOException if the file cannot be opened.
+   *
+   * @see #gzip(Path, int)
+   */
+  public static RdbParser gzip(Path path) throws IOException {
+    return gzip(path, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Returns a parser that reads a gzip-compressed RDB stream, inflating it sequentially through
+   * large buffers. Multi-member gzip streams are supported.
+   *
+   * @param inputStream the gzip-compressed RDB stream
+   * @return a parser over the inflated stream
+   */
+  public static RdbParser gzip(InputStream inputStream) {
+    return new RdbParser(new GzipBufferSource(Channels.newChannel(inputStream),
+                                              GzipBufferSource.DEFAULT_BUFFER_SIZE));
+  }
+
+  /**
+   * <p>Returns a parser that performs a full resynchronization as a Redis replica over the given
+   * channel, typically a SocketChannel connected to the master, and parses the RDB payload sent by
+   * the master as it arrives, without writing it to disk.
+   *
+   * <p>The handshake advertises support for diskless replication ({@code REPLCONF capa eof}) and
+   * requests a full resynchronization ({@code PSYNC ? -1}). Payloads framed with an end-of-payload
+   * mark as well as payloads framed with their length are supported. Closing the parser closes the
+   * channel.
+   *
+   * @param ch a connected channel to the master, in blocking mode
+   * @param password the password to authenticate with, or null
+   * @return a parser over the RDB payload
+   *
+   * @throws IOException if the handshake fails.
+   */
+  public static RdbParser fullResync(ByteChannel ch, String password) throws IOException {
+    ReplicationBufferSource source = new ReplicationBufferSource(ch);
+    source.handshake(ch, password);
+    source.readPayloadHeader();
+    return new RdbParser(source);
+  }
+
+  /**
+   * <p>Returns a parser over an RDB payload sent by a Redis master to a replica, e.g., from a
+   * captured replication stream or from a connection on which the replica handshake has already
+   * been performed. The channel must be positioned right after the {@code +FULLRESYNC} reply.
+   *
+   * <p>With diskless replication, the payload is sent as {@code $EOF:<mark>\r\n}, followed by the
+   * payload and the 40-byte mark again. The parser detects the mark as it reads, holding back
+   * only the last 39 bytes read, and never buffers the payload. Otherwise, the payload is sent as
+   * {@code $<len>\r\n} followed by {@code len} bytes. In both cases, the bytes that follow the
+   * payload are not part of the RDB file and are not parsed.
+   *
+   * @param ch the channel to read the payload from, in blocking mode
+   * @return a parser over the RDB payload
+   *
+   * @throws IOException if the payload header cannot be read.
+   */
+  public static RdbParser replicationPayload(ReadableByteChannel ch) throws IOException {
+    ReplicationBufferSource source = new ReplicationBufferSource(ch);
+    source.readPayloadHeader();
+    return new RdbParser(source);
+  }
+
+  /**
+   * <p>Enables or disables zero-copy mode (disabled by default).
+   *
+   * <p>In zero-copy mode, keys, simple values and the raw envelopes of packed encodings are not
+   * copied out of the parser's internal buffers. Instead, {@link KeyValuePair#getKeySlice} and
+   * {@link KeyValuePair#getRawValue} return {@link ByteSlice} views over these buffers, which
+   * remain valid only until the next call to {@link #readNext}. The {@link KeyValuePair#getKey}
+   * and {@link KeyValuePair#getValues} methods copy the underlying bytes on first call, and
+   * therefore must also be called before the next call to {@link #readNext}.
+   *
+   * <p>Slices are copied when they straddle two internal buffers, so zero-copy mode works best in
+   * combination with {@link #memoryMapped(Path)}.
+   *
+   * @param zeroCopy whether to enable zero-copy mode
+   */
+  public void setZeroCopy(boolean zeroCopy) {
+    this.zeroCopy = zeroCopy;
+  }
+
+  boolean isZeroCopy() {
+    return zeroCopy;
+  }
+
+  /**
+   * <p>Enables or disables keys-only mode (disabled by default).
+   *
+   * <p>In keys-only mode, the parser reads the keys, value types, expire times, LRU/LFU
+   * information, and serialized value sizes of key/value pairs, but walks past the values using only
+   * their length prefixes. Values are neither copied, decompressed, nor decoded, and
+   * {@link KeyValuePair#getValues} and {@link KeyValuePair#getRawValue} return null. When parsing
+   * a file, large values are skipped by seeking past them.
+   *
+   * @param keysOnly whether to enable keys-only mode
+   */
+  public void setKeysOnly(boolean keysOnly) {
+    this.keysOnly = keysOnly;
+  }
+
+  /**
+   * <p>Enables or disables reuse mode (disabled by default).
+   *
+   * <p>In reuse mode, {@link #readNext} returns the same {@link KeyValuePair} instance for every
+   * key/value pair, refilled in place, instead of allocating a new one. Keys, simple values and
+   * the raw envelopes of packed encodings are read into buffers owned by the parser, which are also
+   * reused from one entry to the next. As in zero-copy mode, {@link KeyValuePair#getKeySlice} and
+   * {@link KeyValuePair#getRawValue} return slices over these buffers, and the key/value pair and
+   * everything obtained from it are only valid until the next call to {@link #readNext}. Consumers
+   * that need to keep anything around must copy it out.
+   *
+   * <p>Expire times and LRU/LFU information are available without boxing through
+   * {@link KeyValuePair#getExpireTimeMillis}, {@link KeyValuePair#getIdleSeconds} and
+   * {@link KeyValuePair#getLfuFreq}. Combined with keys-only mode, or with the cursor methods of
+   * {@link KeyValuePair}, streaming consumers produce almost no garbage per entry.
+   *
+   * @param reuseEntries whether to enable reuse mode
+   */
+  public void setReuseEntries(boolean reuseEntries) {
+    this.reuseEntries = reuseEntries;
+  }
+
+  boolean isReusingEntries() {
+    return reuseEntries;
+  }
+
+  /**
+   * <p>Sets a filter to select which key/value pairs are returned by {@link #readNext}, or null to
+   * return all of them (the default).
+   *
+   * <p>The filter is checked right after the key and value type of each key/value pair have been
+   * read. The values of rejected key/value pairs are skipped at the byte level, as in keys-only
+   * mode, and {@link #readNext} moves on to the next entry. Other entries (e.g., {@link SelectDb}
+   * or {@link AuxField}) are always returned.
+   *
+   * @param filter the filter, or null
+   */
+  public void setFilter(EntryFilter filter) {
+    this.filter = filter;
+  }
+
   /**
    * Returns the version of the RDB file being parsed.
    *
@@ -91,13 +378,37 @@ public final class RdbParser implements AutoCloseable {
   }
 
   private void fillBuffer() throws IOException {
-    buf.clear();
-    long n = ch.read(buf);
-    if (n == -1) {
-      throw new IOException("Attempting to read past channel end-of-stream.");
+    if (zeroCopy) {
+      detachSlices();
+    }
+    do {
+      ByteBuffer next = source.next();
+      if (next == null) {
+        throw new IOException("Attempting to read past channel end-of-stream.");
+      }
+      buf = next;
+    } while (!buf.hasRemaining());
+    // Multi-byte primitives are read in big-endian order, see readInt32 and readInt64.
+    buf.order(ByteOrder.BIG_ENDIAN);
+    bytesBuffered += buf.remaining();
+  }
+
+  private void detachSlices() {
+    // The entry being read may hold slices into the current buffer, which the refill is about to
+    // invalidate.
+    if (nextEntry == null) {
+      return;
+    }
+    if (nextEntry.keySlice == keyBuffer.slice) {
+      keyBuffer.detach(buf);
+    } else if (nextEntry.keySlice != null && nextEntry.keySlice.isBackedBy(buf)) {
+      nextEntry.keySlice = nextEntry.keySlice.copy();
+    }
+    if (nextEntry.rawValue == valueBuffer.slice) {
+      valueBuffer.detach(buf);
+    } else if (nextEntry.rawValue != null && nextEntry.rawValue.isBackedBy(buf)) {
+      nextEntry.rawValue = nextEntry.rawValue.copy();
     }
-    bytesBuffered += n;
-    buf.flip();
   }
 
   private int readByte() throws IOException {
@@ -114,10 +425,32 @@ public final class RdbParser implements AutoCloseable {
     return buf.get();
   }
 
+  // Reads a big-endian 32-bit integer straight from the buffer, falling back to byte-by-byte reads
+  // when it straddles a refill.
+  private int readInt32() throws IOException {
+    if (buf.remaining() >= 4) {
+      return buf.getInt();
+    }
+    return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+  }
+
+  // Reads a big-endian 64-bit integer, see readInt32.
+  private long readInt64() throws IOException {
+    if (buf.remaining() >= 8) {
+      return buf.getLong();
+    }
+    return ((long)readInt32() << 32) | ((long)readInt32() & 0xffffffffL);
+  }
+
   private byte[] readBytes(int numBytes) throws IOException {
+    byte[] bs = new byte[numBytes];
+    readBytes(bs, numBytes);
+    return bs;
+  }
+
+  private void readBytes(byte[] bs, int numBytes) throws IOException {
     int rem = numBytes;
     int pos = 0;
-    byte[] bs = new byte[numBytes];
     while (rem > 0) {
       int avail = buf.remaining();
       if (avail >= rem) {
@@ -131,19 +464,38 @@ public final class RdbParser implements AutoCloseable {
         fillBuffer();
       }
     }
-    return bs;
+  }
+
+  // The position, limit, clear, and flip methods of ByteBuffer are called through Buffer, here and
+  // in the buffer sources, such that classes compiled by newer JDKs still link against Java 8,
+  // where ByteBuffer does not override them.
+  private void skipBytes(long numBytes) throws IOException {
+    long rem = numBytes;
+    while (rem > buf.remaining()) {
+      rem -= buf.remaining();
+      ((Buffer)buf).position(buf.limit());
+      long skipped = source.skip(rem);
+      bytesBuffered += skipped;
+      rem -= skipped;
+      if (rem > 0) {
+        fillBuffer();
+      }
+    }
+    ((Buffer)buf).position(buf.position() + (int)rem);
+  }
+
+  private ByteSlice readSlice(int numBytes) throws IOException {
+    if (buf.remaining() < numBytes) {
+      return ByteSlice.wrap(readBytes(numBytes));
+    }
+    int pos = buf.position();
+    ((Buffer)buf).position(pos + numBytes);
+    return new ByteSlice(buf, pos, numBytes);
   }
 
   private long readExpirationMillis() throws IOException {
-    byte[] expireTime = readBytes(8);
-    return ((long)expireTime[7] & 0xff) << 56
-         | ((long)expireTime[6] & 0xff) << 48
-         | ((long)expireTime[5] & 0xff) << 40
-         | ((long)expireTime[4] & 0xff) << 32
-         | ((long)expireTime[3] & 0xff) << 24
-         | ((long)expireTime[2] & 0xff) << 16
-         | ((long)expireTime[1] & 0xff) <<  8
-         | ((long)expireTime[0] & 0xff) <<  0;
+    // Expiration times are little-endian.
+    return Long.reverseBytes(readInt64());
   }
 
   private String readMagicNumber() throws IOException {
@@ -154,6 +506,23 @@ public final class RdbParser implements AutoCloseable {
     return Integer.parseInt(new String(readBytes(4), ASCII));
   }
 
+  /**
+   * Returns true if the next entry is an aux field. Reads the RDB header if needed, but does not
+   * consume the next entry.
+   */
+  boolean nextIsAuxField() throws IOException {
+    if (!isInitialized) {
+      init();
+    }
+    if (!hasNext) {
+      return false;
+    }
+    if (!buf.hasRemaining()) {
+      fillBuffer();
+    }
+    return (buf.get(buf.position()) & 0xff) == AUX;
+  }
+
   private void init() throws IOException {
     fillBuffer();
     if (!readMagicNumber().equals("REDIS")) {
@@ -164,6 +533,7 @@ public final class RdbParser implements AutoCloseable {
       throw new IllegalStateException("Unknown version");
     }
     nextEntry = new KeyValuePair();
+    resetNextEntry = false;
     hasNext = true;
     isInitialized = true;
   }
@@ -181,6 +551,69 @@ public final class RdbParser implements AutoCloseable {
     return bytesBuffered - buf.remaining();
   }
 
+  /**
+   * <p>Returns the byte offset in the underlying file or stream at which the last entry returned by
+   * {@link #readNext} starts, or -1 if no entry has been read yet.
+   *
+   * <p>For key/value pairs, this is the offset of the first byte of the entry, including its
+   * optional expire time, LRU idle time, or LFU frequency.
+   *
+   * @return the byte offset of the last entry.
+   */
+  public long lastEntryOffset() {
+    return lastEntryOffset;
+  }
+
+  /**
+   * <p>Returns a checkpoint of the current position of the parser, i.e., right after the last
+   * entry returned by {@link #readNext}.
+   *
+   * <p>Parsing can later be resumed from this checkpoint, possibly in a different process, by
+   * opening a new parser on the same file and calling {@link #resume}. If the {@link Eof} entry
+   * has already been read, the checkpoint points to it, such that a resumed parser returns it
+   * again.
+   *
+   * @return a checkpoint of the current parser position
+   *
+   * @throws IllegalStateException if no entry has been read yet.
+   */
+  public Checkpoint checkpoint() {
+    if (!isInitialized) {
+      throw new IllegalStateException("Cannot checkpoint a parser before reading the RDB header.");
+    }
+    long offset = hasNext ? bytesParsed() : lastEntryOffset;
+    return new Checkpoint(offset, version, currentDb);
+  }
+
+  /**
+   * <p>Resumes parsing from a checkpoint taken by another parser on the same RDB file. The next
+   * call to {@link #readNext} returns the entry that followed the checkpoint.
+   *
+   * <p>Resuming costs a single seek of the underlying file, and therefore requires a parser opened
+   * on a file or on a seekable channel.
+   *
+   * @param checkpoint the checkpoint to resume from
+   *
+   * @throws IOException if there is an error seeking the underlying channel.
+   * @throws UnsupportedOperationException if the underlying source is not seekable.
+   */
+  public void resume(Checkpoint checkpoint) throws IOException {
+    int rdbVersion = checkpoint.getRdbVersion();
+    if (rdbVersion < 1 || rdbVersion > 12) {
+      throw new IllegalStateException("Unknown version");
+    }
+    source.seek(checkpoint.getOffset());
+    buf = EMPTY_BUFFER;
+    bytesBuffered = checkpoint.getOffset();
+    version = rdbVersion;
+    currentDb = checkpoint.getDb();
+    lastEntryOffset = -1;
+    nextEntry = new KeyValuePair();
+    resetNextEntry = false;
+    hasNext = true;
+    isInitialized = true;
+  }
+
   /**
    * Returns the next Entry from the underlying file or stream.
    *
@@ -189,6 +622,11 @@ public final class RdbParser implements AutoCloseable {
    * @throws IOException if there is an error reading from the underlying channel.
    */
   public Entry readNext() throws IOException {
+    if (resetNextEntry) {
+      nextEntry.reset();
+      resetNextEntry = false;
+    }
+    long entryOffset = -1;
     while (true) {
       if (!hasNext) {
         if (!isInitialized) {
@@ -198,16 +636,24 @@ public final class RdbParser implements AutoCloseable {
           return null;
         }
       }
+      if (entryOffset < 0) {
+        entryOffset = bytesParsed();
+      }
       int valueType = readByte();
+      Entry entry;
       switch (valueType) {
         case EOF:
-          return readEof();
+          entry = readEof();
+          break;
         case SELECTDB:
-          return readSelectDb();
+          entry = readSelectDb();
+          break;
         case RESIZEDB:
-          return readResizeDb();
+          entry = readResizeDb();
+          break;
         case AUX:
-          return readAuxField();
+          entry = readAuxField();
+          break;
         case EXPIRETIME:
           readExpireTime();
           continue;
@@ -228,11 +674,136 @@ public final class RdbParser implements AutoCloseable {
         case SLOT_INFO:
           throw new UnsupportedOperationException("Redis cluster is not supported");
         default:
-          readEntry(valueType);
-          KeyValuePair entry = nextEntry;
-          nextEntry = new KeyValuePair();
-          return entry;
+          if (!readEntry(valueType)) {
+            nextEntry.reset();
+            entryOffset = -1;
+            continue;
+          }
+          entry = nextEntry;
+          if (reuseEntries) {
+            resetNextEntry = true;
+          } else {
+            nextEntry = new KeyValuePair();
+          }
+          break;
+      }
+      lastEntryOffset = entryOffset;
+      return entry;
+    }
+  }
+
+  /**
+   * <p>Returns a sequential stream over the remaining entries of the RDB file, ending with the
+   * {@link Eof} entry.
+   *
+   * <p>The stream reads entries from this parser as it is consumed, and therefore must not be
+   * consumed concurrently with calls to {@link #readNext}. Closing the stream does not close the
+   * parser. IOExceptions thrown while reading are rethrown as UncheckedIOExceptions.
+   *
+   * @return a stream over the remaining entries.
+   */
+  public Stream<Entry> stream() {
+    if (reuseEntries) {
+      throw new IllegalStateException("Cannot stream the entries of a parser that reuses entries.");
+    }
+    Spliterator<Entry> spliterator = new Spliterators.AbstractSpliterator<Entry>(
+        Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+        @Override
+        public boolean tryAdvance(Consumer<? super Entry> action) {
+          Entry entry;
+          try {
+            entry = readNext();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          if (entry == null) {
+            return false;
+          }
+          action.accept(entry);
+          return true;
+        }
+      };
+    return StreamSupport.stream(spliterator, false);
+  }
+
+  /**
+   * Returns a stream over the entries of an RDB file that can be split on entry boundaries for
+   * parallel processing. Equivalent to {@code stream(path, 4 * 1024 * 1024)}.
+   *
+   * @param path the RDB file
+   * @return a stream over the entries of the file
+   *
+   * @see #stream(Path, long)
+   */
+  public static Stream<Entry> stream(Path path) {
+    return stream(path, ParallelRdbParser.DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * <p>Returns a stream over the entries of an RDB file that can be split on entry boundaries for
+   * parallel processing.
+   *
+   * <p>If the stream is made parallel, the file is first scanned in keys-only mode, skipping over
+   * values by their length prefixes, to cut it into chunks of consecutive entries of roughly
+   * {@code chunkSize} bytes. The stream's spliterator then splits on chunk boundaries, and each
+   * split parses its chunks from its own memory-mapped view of the file, such that reading,
+   * decoding, and the downstream operations of the pipeline all run on the fork-join pool. Values
+   * are decoded lazily on whichever thread consumes them. Sequential streams skip the scan and
+   * parse the file from start to end.
+   *
+   * <p>As with {@link ParallelRdbParser}, the {@link SelectDb} entries are only returned once, at
+   * their position in the file. Use an ordered terminal operation (e.g. {@code forEachOrdered} or
+   * {@code collect}) if the database of each key matters.
+   *
+   * <p>The stream should be closed, e.g. in a try-with-resources statement, to release the
+   * memory-mapped views of the file of partially consumed streams. IOExceptions thrown while
+   * reading are rethrown as UncheckedIOExceptions.
+   *
+   * @param path the RDB file
+   * @param chunkSize the approximate size in bytes of the chunks that the stream splits on
+   * @return a stream over the entries of the file
+   */
+  public static Stream<Entry> stream(Path path, long chunkSize) {
+    EntrySpliterator.Parsers parsers = new EntrySpliterator.Parsers();
+    return StreamSupport.stream(new EntrySpliterator(path, chunkSize, parsers), false)
+        .onClose(parsers);
+  }
+
+  /**
+   * <p>Parses the rest of the RDB file, pushing its contents to the given visitor.
+   *
+   * <p>Key/value pairs are not returned as lists of values. Instead, their elements are passed to
+   * the visitor as they are decoded (see {@link RdbVisitor}), such that keys with millions of
+   * elements are parsed in bounded memory. Keys-only mode and filters are honored: in keys-only
+   * mode and for rejected keys, the values are skipped and no element callbacks are made.
+   *
+   * @param visitor the visitor to push the contents of the file to
+   * @throws IOException if there is an error reading from the underlying channel.
+   */
+  public void accept(RdbVisitor visitor) throws IOException {
+    this.visitor = visitor;
+    try {
+      Entry entry;
+      while ((entry = readNext()) != null) {
+        switch (entry.getType()) {
+          case AUX_FIELD:
+            visitor.onAux((AuxField)entry);
+            break;
+          case SELECT_DB:
+            visitor.onSelectDb((SelectDb)entry);
+            break;
+          case RESIZE_DB:
+            visitor.onResizeDb((ResizeDb)entry);
+            break;
+          case EOF:
+            visitor.onEof((Eof)entry);
+            break;
+          default: // key/value pairs are visited while they are read
+            break;
+        }
       }
+    } finally {
+      this.visitor = null;
     }
   }
 
@@ -251,7 +822,8 @@ public final class RdbParser implements AutoCloseable {
   }
 
   private SelectDb readSelectDb() throws IOException {
-    return new SelectDb(readLength());
+    currentDb = readLength();
+    return new SelectDb(currentDb);
   }
 
   private ResizeDb readResizeDb() throws IOException {
@@ -280,22 +852,10 @@ public final class RdbParser implements AutoCloseable {
       return (((long)firstByte & 0x3f) << 8) | ((long)readByte() & 0xff);
     } else if (firstByte == 0x80) {
       // 10|000000: len is a 32-bit integer encoded on the next 4 bytes.
-      byte[] bs = readBytes(4);
-      return ((long)bs[0] & 0xff) << 24
-          | ((long)bs[1] & 0xff) << 16
-          | ((long)bs[2] & 0xff) <<  8
-          | ((long)bs[3] & 0xff) <<  0;
+      return (long)readInt32() & 0xffffffffL;
     } else if (firstByte == 0x81) {
       // 10|000001: len is a 64-bit integer encoded on the next 8 bytes.
-      byte[] bs = readBytes(8);
-      return ((long)bs[0] & 0xff) << 56
-          | ((long)bs[1] & 0xff) << 48
-          | ((long)bs[2] & 0xff) << 40
-          | ((long)bs[3] & 0xff) << 32
-          | ((long)bs[4] & 0xff) << 24
-          | ((long)bs[5] & 0xff) << 16
-          | ((long)bs[6] & 0xff) <<  8
-          | ((long)bs[7] & 0xff) <<  0;
+      return readInt64();
     } else {
       // 11|XXXXXX: special encoding.
       throw new IllegalStateException("Expected a length, but got a special string encoding.");
@@ -303,63 +863,176 @@ public final class RdbParser implements AutoCloseable {
   }
 
   private byte[] readStringEncoded() throws IOException {
+    return readStringEncoded(readByte());
+  }
+
+  private byte[] readStringEncoded(int firstByte) throws IOException {
+    if (isSpecialStringEncoding(firstByte)) {
+      return readSpecialStringEncoded(firstByte & 0x3f);
+    }
+    return readBytes(readStringLength(firstByte));
+  }
+
+  // Reads a string into the list, keeping the value of integer-encoded strings.
+  private void readStringEncoded(StringList list) throws IOException {
     int firstByte = readByte();
+    if (isIntegerStringEncoding(firstByte)) {
+      list.addInteger(readInteger(firstByte & 0x3f));
+    } else {
+      list.addString(readStringEncoded(firstByte));
+    }
+  }
+
+  private ByteSlice readStringEncodedSlice() throws IOException {
+    return readStringEncodedSlice(readByte());
+  }
+
+  private ByteSlice readStringEncodedSlice(int firstByte) throws IOException {
+    if (isSpecialStringEncoding(firstByte)) {
+      return ByteSlice.wrap(readSpecialStringEncoded(firstByte & 0x3f));
+    }
+    return readSlice(readStringLength(firstByte));
+  }
+
+  // Reads a string into the given reusable slice. In zero-copy mode, the slice points into the
+  // current buffer if the string fits in it, otherwise the string is copied into the slice buffer.
+  private ByteSlice readStringEncodedSlice(int firstByte, SliceBuffer sb) throws IOException {
+    if (isIntegerStringEncoding(firstByte)) {
+      byte[] bytes = sb.ensureCapacity(IntegerBytes.MAX_LENGTH);
+      return sb.pointToBytes(IntegerBytes.format(readInteger(firstByte & 0x3f), bytes, 0));
+    }
+    if (isSpecialStringEncoding(firstByte)) {
+      return ByteSlice.wrap(readSpecialStringEncoded(firstByte & 0x3f));
+    }
+    int len = readStringLength(firstByte);
+    if (zeroCopy && buf.remaining() >= len) {
+      int pos = buf.position();
+      ((Buffer)buf).position(pos + len);
+      return sb.point(buf, pos, len);
+    }
+    readBytes(sb.ensureCapacity(len), len);
+    return sb.pointToBytes(len);
+  }
+
+  private static boolean isSpecialStringEncoding(int firstByte) {
+    // 11|XXXXXX: the string is encoded as an integer or is LZF compressed.
+    return (firstByte & 0xc0) == 0xc0;
+  }
+
+  private int readStringLength(int firstByte) throws IOException {
     // the first two bits determine the encoding
     int flag = (firstByte & 0xc0) >> 6;
-    int len;
     switch (flag) {
       case 0: // length is read from the lower 6 bits
-        len = firstByte & 0x3f;
-        return readBytes(len);
+        return firstByte & 0x3f;
       case 1: // one additional byte is read for a 14 bit encoding
-        len = ((firstByte & 0x3f) << 8) | (readByte() & 0xff);
-        return readBytes(len);
+        return ((firstByte & 0x3f) << 8) | (readByte() & 0xff);
       case 2: // read next four bytes as unsigned big-endian
-        byte[] bs = readBytes(4);
-        len = ((int)bs[0] & 0xff) << 24
-            | ((int)bs[1] & 0xff) << 16
-            | ((int)bs[2] & 0xff) <<  8
-            | ((int)bs[3] & 0xff) <<  0;
+        int len = readInt32();
         if (len < 0) {
           throw new IllegalStateException("Strings longer than " + Integer.MAX_VALUE
                                           + "bytes are not supported.");
         }
-        return readBytes(len);
-      case 3:
-        return readSpecialStringEncoded(firstByte & 0x3f);
+        return len;
       default: // never reached
-        return null;
+        throw new IllegalStateException("Expected a string length, but got a special encoding.");
     }
   }
 
-  private byte[] readInteger8Bits() throws IOException {
-    return String.valueOf(readSignedByte()).getBytes(ASCII);
+  private void skipStringEncoded() throws IOException {
+    int firstByte = readByte();
+    if (!isSpecialStringEncoding(firstByte)) {
+      skipBytes(readStringLength(firstByte));
+      return;
+    }
+    int type = firstByte & 0x3f;
+    switch (type) {
+      case 0:
+        skipBytes(1);
+        break;
+      case 1:
+        skipBytes(2);
+        break;
+      case 2:
+        skipBytes(4);
+        break;
+      case 3: // skip the compressed bytes without decompressing them
+        long clen = readLength();
+        readLength(); // uncompressed length
+        skipBytes(clen);
+        break;
+      default:
+        throw new IllegalStateException("Unknown special encoding: " + type);
+    }
+  }
+
+  private void skipStringsEncoded(long num) throws IOException {
+    for (long i = 0; i < num; ++i) {
+      skipStringEncoded();
+    }
   }
 
-  private byte[] readInteger16Bits() throws IOException {
-    long val = ((long)readByte() & 0xff) << 0
+  private void skipDoubleString() throws IOException {
+    int len = readByte();
+    if (len < 0xfd) { // 0xfd, 0xfe, and 0xff encode NaN and infinities on a single byte
+      skipBytes(len);
+    }
+  }
+
+  private static boolean isIntegerStringEncoding(int firstByte) {
+    // 11|000000, 11|000001, 11|000010: the string is an 8, 16 or 32 bit integer.
+    return isSpecialStringEncoding(firstByte) && (firstByte & 0x3f) <= 2;
+  }
+
+  private long readInteger8Bits() throws IOException {
+    return readSignedByte();
+  }
+
+  private long readInteger16Bits() throws IOException {
+    return ((long)readByte() & 0xff) << 0
         |  (long)readSignedByte()   << 8; // Don't apply 0xff mask to preserve sign.
-    return String.valueOf(val).getBytes(ASCII);
   }
 
-  private byte[] readInteger32Bits() throws IOException {
-    byte[] bs = readBytes(4);
-    long val =  (long)bs[3]         << 24 // Don't apply 0xff mask to preserve sign.
-        | ((long)bs[2] & 0xff) << 16
-        | ((long)bs[1] & 0xff) <<  8
-        | ((long)bs[0] & 0xff) <<  0;
-    return String.valueOf(val).getBytes(ASCII);
+  private long readInteger32Bits() throws IOException {
+    return Integer.reverseBytes(readInt32()); // little-endian
+  }
+
+  private long readInteger(int type) throws IOException {
+    switch (type) {
+      case 0:
+        return readInteger8Bits();
+      case 1:
+        return readInteger16Bits();
+      case 2:
+        return readInteger32Bits();
+      default:
+        throw new IllegalStateException("Unknown integer encoding: " + type);
+    }
+  }
+
+  private static boolean isLzfStringEncoding(int firstByte) {
+    // 11|000011: the string is LZF compressed.
+    return isSpecialStringEncoding(firstByte) && (firstByte & 0x3f) == 3;
   }
 
   private byte[] readLzfString() throws IOException {
-    int clen = (int)readLength();
-    int ulen = (int)readLength();
+    int clen = readLzfLength();
+    int ulen = readLzfLength();
     byte[] src = readBytes(clen);
     byte[] dest = new byte[ulen];
     Lzf.expand(src, dest);
     return dest;
   }
 
+  private int readLzfLength() throws IOException {
+    long len = readLength();
+    if (len > Integer.MAX_VALUE) {
+      throw new IllegalStateException("LZF strings longer than " + Integer.MAX_VALUE
+                                      + " bytes are not supported.");
+    }
+    return (int)len;
+  }
+
   private byte[] readDoubleString() throws IOException {
     int len = readByte();
     switch (len) {
@@ -377,11 +1050,9 @@ public final class RdbParser implements AutoCloseable {
   private byte[] readSpecialStringEncoded(int type) throws IOException {
     switch (type) {
       case 0:
-        return readInteger8Bits();
       case 1:
-        return readInteger16Bits();
       case 2:
-        return readInteger32Bits();
+        return IntegerBytes.format(readInteger(type));
       case 3:
         return readLzfString();
       default:
@@ -390,97 +1061,268 @@ public final class RdbParser implements AutoCloseable {
   }
 
   private void readExpireTime() throws IOException {
-    nextEntry.expireTime = readBytes(4);
+    // Expire times in seconds are unsigned little-endian 32-bit integers.
+    nextEntry.expireTime = 1000L * (Integer.reverseBytes(readInt32()) & 0xffffffffL);
   }
 
   private void readExpireTimeMillis() throws IOException {
-    nextEntry.expireTime = readBytes(8);
+    nextEntry.expireTime = readExpirationMillis();
   }
 
-  private void readEntry(int valueType) throws IOException {
-    nextEntry.key = readStringEncoded();
+  private static ValueType valueTypeOf(int valueType) {
     switch (valueType) {
       case 0:
+        return ValueType.VALUE;
+      case 1:
+        return ValueType.LIST;
+      case 2:
+        return ValueType.SET;
+      case 3:
+        return ValueType.SORTED_SET;
+      case 4:
+        return ValueType.HASH;
+      case 5:
+        return ValueType.SORTED_SET2;
+      case 6: // Modules v1
+      case 7: // Modules v2
+        throw new UnsupportedOperationException("Redis modules are not supported");
+      case 9:
+        return ValueType.ZIPMAP;
+      case 10:
+        return ValueType.ZIPLIST;
+      case 11:
+        return ValueType.INTSET;
+      case 12:
+        return ValueType.SORTED_SET_AS_ZIPLIST;
+      case 13:
+        return ValueType.HASHMAP_AS_ZIPLIST;
+      case 14:
+        return ValueType.QUICKLIST;
+      case 15: // Stream ListPacks
+      case 19: // Stream ListPacks_2
+      case 21: // Stream ListPacks_3
+        throw new UnsupportedOperationException("Redis streams are not supported");
+      case 16:
+        return ValueType.HASHMAP_AS_LISTPACK;
+      case 17:
+        return ValueType.SORTED_SET_AS_LISTPACK;
+      case 18:
+        return ValueType.QUICKLIST2;
+      case 20:
+        return ValueType.SET_AS_LISTPACK;
+      case 22:
+        return ValueType.HASHMAP_WITH_METADATA_PRE_GA;
+      case 23:
+        return ValueType.HASHMAP_AS_LISTPACK_EX_PRE_GA;
+      case 24:
+        return ValueType.HASHMAP_WITH_METADATA;
+      case 25:
+        return ValueType.HASHMAP_AS_LISTPACK_EX;
+      default:
+        throw new UnsupportedOperationException("Unknown value type: " + valueType);
+    }
+  }
+
+  private boolean readEntry(int type) throws IOException {
+    ValueType valueType = valueTypeOf(type);
+    if (reuseEntries) {
+      ByteSlice key = readStringEncodedSlice(readByte(), keyBuffer);
+      if (filter != null && !filter.accept(currentDb, key, valueType)) {
+        skipValue(valueType);
+        return false;
+      }
+      nextEntry.keySlice = key;
+    } else if (filter != null) {
+      ByteSlice key = readStringEncodedSlice();
+      if (!filter.accept(currentDb, key, valueType)) {
+        skipValue(valueType);
+        return false;
+      }
+      if (zeroCopy) {
+        nextEntry.keySlice = key;
+      } else {
+        nextEntry.key = key.toByteArray();
+      }
+    } else if (zeroCopy) {
+      nextEntry.keySlice = readStringEncodedSlice();
+    } else {
+      nextEntry.key = readStringEncoded();
+    }
+    long valueStart = bytesParsed();
+    if (visitor != null) {
+      nextEntry.valueType = valueType;
+      visitor.onKeyStart(nextEntry);
+    }
+    if (keysOnly) {
+      skipValue(valueType);
+    } else if (visitor != null) {
+      visitValue(valueType);
+    } else {
+      readValue(valueType);
+    }
+    nextEntry.serializedValueSize = bytesParsed() - valueStart;
+    if (visitor != null) {
+      visitor.onKeyEnd(nextEntry);
+    }
+    return true;
+  }
+
+  private void readValue(ValueType valueType) throws IOException {
+    switch (valueType) {
+      case VALUE:
         readValue();
         break;
-      case 1:
+      case LIST:
         readList();
         break;
-      case 2:
+      case SET:
         readSet();
         break;
-      case 3:
+      case SORTED_SET:
         readSortedSet();
         break;
-      case 4:
+      case HASH:
         readHash();
         break;
-      case 5:
+      case SORTED_SET2:
         readSortedSet2();
         break;
-      case 6: // Modules v1
-      case 7: // Modules v2
-        throw new UnsupportedOperationException("Redis modules are not supported");
-      case 9:
+      case ZIPMAP:
         readZipMap();
         break;
-      case 10:
+      case ZIPLIST:
         readZipList();
         break;
-      case 11:
+      case INTSET:
         readIntSet();
         break;
-      case 12:
+      case SORTED_SET_AS_ZIPLIST:
         readSortedSetAsZipList();
         break;
-      case 13:
+      case HASHMAP_AS_ZIPLIST:
         readHashmapAsZipList();
         break;
-      case 14:
+      case QUICKLIST:
         readQuickList();
         break;
-      case 15: // Stream ListPacks
-      case 19: // Stream ListPacks_2
-      case 21: // Stream ListPacks_3
-        throw new UnsupportedOperationException("Redis streams are not supported");
-      case 16:
+      case HASHMAP_AS_LISTPACK:
         readHashListPack();
         break;
-      case 17:
+      case SORTED_SET_AS_LISTPACK:
         readZSetListPack();
         break;
-      case 18:
+      case QUICKLIST2:
         readQuickList2();
         break;
-      case 20:
+      case SET_AS_LISTPACK:
         readSetListPack();
         break;
-      case 22:
-      case 24:
-        readHashMetadata(valueType == 24);
+      case HASHMAP_WITH_METADATA_PRE_GA:
+      case HASHMAP_WITH_METADATA:
+        readHashMetadata(valueType == ValueType.HASHMAP_WITH_METADATA);
         break;
-      case 23:
-      case 25:
-        readHashListPackEx(valueType == 25);
+      case HASHMAP_AS_LISTPACK_EX_PRE_GA:
+      case HASHMAP_AS_LISTPACK_EX:
+        readHashListPackEx(valueType == ValueType.HASHMAP_AS_LISTPACK_EX);
         break;
-      default:
-        throw new UnsupportedOperationException("Unknown value type: " + valueType);
+      default: // never reached
+        throw new IllegalStateException("Unexpected value type: " + valueType);
+    }
+  }
+
+  private void skipValue(ValueType valueType) throws IOException {
+    nextEntry.valueType = valueType;
+    switch (valueType) {
+      case LIST:
+      case SET:
+      case QUICKLIST:
+        skipStringsEncoded(readLength());
+        break;
+      case HASH:
+        skipStringsEncoded(2 * readLength());
+        break;
+      case SORTED_SET:
+        for (long i = readLength(); i > 0; --i) {
+          skipStringEncoded();
+          skipDoubleString();
+        }
+        break;
+      case SORTED_SET2:
+        for (long i = readLength(); i > 0; --i) {
+          skipStringEncoded();
+          skipBytes(8);
+        }
+        break;
+      case QUICKLIST2:
+        for (long i = readLength(); i > 0; --i) {
+          readLength(); // container format
+          skipStringEncoded();
+        }
+        break;
+      case HASHMAP_WITH_METADATA:
+        nextEntry.minHashExpireTime = readExpirationMillis();
+        skipHashMetadata();
+        break;
+      case HASHMAP_WITH_METADATA_PRE_GA:
+        skipHashMetadata();
+        break;
+      case HASHMAP_AS_LISTPACK_EX:
+        nextEntry.minHashExpireTime = readExpirationMillis();
+        skipStringEncoded();
+        break;
+      default: // simple values and packed encodings are stored as a single string
+        skipStringEncoded();
+        break;
+    }
+  }
+
+  private void skipHashMetadata() throws IOException {
+    for (long i = readLength(); i > 0; --i) {
+      readLength(); // hash field expiry
+      skipStringEncoded();
+      skipStringEncoded();
     }
   }
 
   private void readZSetListPack() throws IOException {
-    nextEntry.valueType = ValueType.SORTED_SET_AS_LISTPACK;
-    nextEntry.values = new SortedSetAsListpack(readStringEncoded());
+    readRawValue(ValueType.SORTED_SET_AS_LISTPACK);
   }
 
   private void readSetListPack() throws IOException {
-    nextEntry.valueType = ValueType.SET_AS_LISTPACK;
-    nextEntry.values = new ListpackList(readStringEncoded());
+    readRawValue(ValueType.SET_AS_LISTPACK);
   }
 
   private void readValue() throws IOException {
-    nextEntry.valueType = ValueType.VALUE;
-    nextEntry.values = Arrays.asList(readStringEncoded());
+    int firstByte = readByte();
+    if (isIntegerStringEncoding(firstByte)) {
+      nextEntry.valueType = ValueType.VALUE;
+      nextEntry.isIntValue = true;
+      nextEntry.intValue = readInteger(firstByte & 0x3f);
+      return;
+    }
+    readRawValue(ValueType.VALUE, firstByte);
+  }
+
+  private void readRawValue(ValueType valueType) throws IOException {
+    readRawValue(valueType, readByte());
+  }
+
+  private void readRawValue(ValueType valueType, int firstByte) throws IOException {
+    nextEntry.valueType = valueType;
+    if (isLzfStringEncoding(firstByte)) {
+      // Keep the value compressed until it is first accessed.
+      int clen = readLzfLength();
+      nextEntry.uncompressedValueLength = readLzfLength();
+      nextEntry.compressedValue = readBytes(clen);
+    } else if (reuseEntries) {
+      nextEntry.rawValue = readStringEncodedSlice(firstByte, valueBuffer);
+    } else if (zeroCopy) {
+      nextEntry.rawValue = readStringEncodedSlice(firstByte);
+    } else {
+      byte[] raw = readStringEncoded(firstByte);
+      nextEntry.rawBytes = raw;
+      nextEntry.values = KeyValuePair.decodeRawValue(valueType, raw);
+    }
   }
 
   private void readList() throws IOException {
@@ -490,9 +1332,9 @@ public final class RdbParser implements AutoCloseable {
                                          + " elements are not supported.");
     }
     int size = (int)len;
-    List<byte[]> list = new ArrayList<byte[]>(size);
+    StringList list = new StringList(size);
     for (int i = 0; i < size; ++i) {
-      list.add(readStringEncoded());
+      readStringEncoded(list);
     }
     nextEntry.valueType = ValueType.LIST;
     nextEntry.values = list;
@@ -505,9 +1347,9 @@ public final class RdbParser implements AutoCloseable {
                                          + " elements are not supported.");
     }
     int size = (int)len;
-    List<byte[]> set = new ArrayList<byte[]>(size);
+    StringList set = new StringList(size);
     for (int i = 0; i < size; ++i) {
-      set.add(readStringEncoded());
+      readStringEncoded(set);
     }
     nextEntry.valueType = ValueType.SET;
     nextEntry.values = set;
@@ -552,55 +1394,51 @@ public final class RdbParser implements AutoCloseable {
                                          + " elements are not supported.");
     }
     int size = (int)len;
-    List<byte[]> kvPairs = new ArrayList<byte[]>(2 * size);
+    StringList kvPairs = new StringList(2 * size);
     for (int i = 0; i < size; ++i) {
-      kvPairs.add(readStringEncoded());
-      kvPairs.add(readStringEncoded());
+      readStringEncoded(kvPairs);
+      readStringEncoded(kvPairs);
     }
     nextEntry.valueType = ValueType.HASH;
     nextEntry.values = kvPairs;
   }
 
   private void readZipMap() throws IOException {
-    nextEntry.valueType = ValueType.ZIPMAP;
-    nextEntry.values = new ZipMap(readStringEncoded());
+    readRawValue(ValueType.ZIPMAP);
   }
 
   private void readZipList() throws IOException {
-    nextEntry.valueType = ValueType.ZIPLIST;
-    nextEntry.values = new ZipList(readStringEncoded());
+    readRawValue(ValueType.ZIPLIST);
   }
 
   private void readIntSet() throws IOException {
-    nextEntry.valueType = ValueType.INTSET;
-    nextEntry.values = new IntSet(readStringEncoded());
+    readRawValue(ValueType.INTSET);
   }
 
   private void readSortedSetAsZipList() throws IOException {
-    nextEntry.valueType = ValueType.SORTED_SET_AS_ZIPLIST;
-    nextEntry.values = new SortedSetAsZipList(readStringEncoded());
+    readRawValue(ValueType.SORTED_SET_AS_ZIPLIST);
   }
 
   private void readHashmapAsZipList() throws IOException {
-    nextEntry.valueType = ValueType.HASHMAP_AS_ZIPLIST;
-    nextEntry.values = new ZipList(readStringEncoded());
+    readRawValue(ValueType.HASHMAP_AS_ZIPLIST);
   }
 
   private void readHashListPack() throws IOException {
-    nextEntry.valueType = ValueType.HASHMAP_AS_LISTPACK;
-    nextEntry.values = new ListpackList(readStringEncoded());
+    readRawValue(ValueType.HASHMAP_AS_LISTPACK);
   }
 
   private void readQuickList2() throws IOException {
     int size = (int)readLength();
-    List<byte[]> listpacks = new ArrayList<byte[]>(size);
+    List<byte[]> nodes = new ArrayList<byte[]>(size);
+    BitSet plainNodes = new BitSet();
     for (int i = 0; i < size; ++i) {
-      // Throw away container format
-      readLength();
-      listpacks.add(readStringEncoded());
+      if (readLength() == QuickList2.CONTAINER_PLAIN) {
+        plainNodes.set(i);
+      }
+      nodes.add(readStringEncoded());
     }
     nextEntry.valueType = ValueType.QUICKLIST2;
-    nextEntry.values = new QuickList2(listpacks);
+    nextEntry.values = new QuickList2(nodes, plainNodes);
   }
 
   private void readQuickList() throws IOException {
@@ -634,26 +1472,178 @@ public final class RdbParser implements AutoCloseable {
     int size = (int)len;
     List<byte[]> kvxTuples = new ArrayList<byte[]>(3 * size);
     for (int i = 0; i < size; ++i) {
-      long hashExpiry = readLength();
-      if (hashExpiry > 0) {
-        hashExpiry += nextEntry.getMinHashExpireTime() - 1;
-      }
+      long hashExpiry = readHashFieldExpiry(gaType);
       kvxTuples.add(readStringEncoded());
       kvxTuples.add(readStringEncoded());
-      kvxTuples.add(String.valueOf(hashExpiry).getBytes(ASCII));
+      kvxTuples.add(IntegerBytes.format(hashExpiry));
     }
 
     nextEntry.values = kvxTuples;
   }
 
+  // Reads the expire time of a field of a hash with metadata, which is 0 if the field has none. In
+  // the GA format, it is stored relative to the minimum expire time of the hash.
+  private long readHashFieldExpiry(boolean gaType) throws IOException {
+    long hashExpiry = readLength();
+    if (hashExpiry > 0 && gaType) {
+      hashExpiry += nextEntry.minHashExpireTime - 1;
+    }
+    return hashExpiry;
+  }
+
   private void readHashListPackEx(boolean gaType) throws IOException {
     if (gaType) {
-      nextEntry.valueType = ValueType.HASHMAP_AS_LISTPACK_EX;
       nextEntry.minHashExpireTime = readExpirationMillis();
+      readRawValue(ValueType.HASHMAP_AS_LISTPACK_EX);
     } else {
-      nextEntry.valueType = ValueType.HASHMAP_AS_LISTPACK_EX_PRE_GA;
+      readRawValue(ValueType.HASHMAP_AS_LISTPACK_EX_PRE_GA);
+    }
+  }
+
+  private void visitValue(ValueType valueType) throws IOException {
+    switch (valueType) {
+      case VALUE:
+        visitor.onValue(readStringEncoded());
+        break;
+      case LIST:
+        for (long i = readLength(); i > 0; --i) {
+          visitor.onListElement(readStringEncoded());
+        }
+        break;
+      case SET:
+        for (long i = readLength(); i > 0; --i) {
+          visitor.onSetMember(readStringEncoded());
+        }
+        break;
+      case SORTED_SET:
+        for (long i = readLength(); i > 0; --i) {
+          byte[] member = readStringEncoded();
+          byte[] score = readDoubleString();
+          visitor.onZsetMember(member, DoubleBytes.parse(score, 0, score.length));
+        }
+        break;
+      case SORTED_SET2:
+        for (long i = readLength(); i > 0; --i) {
+          byte[] member = readStringEncoded();
+          // Binary scores are little-endian doubles.
+          visitor.onZsetMember(member, Double.longBitsToDouble(Long.reverseBytes(readInt64())));
+        }
+        break;
+      case HASH:
+        for (long i = readLength(); i > 0; --i) {
+          visitor.onHashField(readStringEncoded(), readStringEncoded(), -1);
+        }
+        break;
+      case ZIPMAP:
+        visitHashFields(new ZipMap.Cursor(readStringEncoded()));
+        break;
+      case ZIPLIST:
+        visitListElements(new ZipList.Cursor(readStringEncoded()));
+        break;
+      case INTSET:
+        visitSetMembers(new IntSet(readStringEncoded()).cursor());
+        break;
+      case SORTED_SET_AS_ZIPLIST:
+        visitSortedSet(new SortedSetAsZipList(readStringEncoded()).sortedSetCursor());
+        break;
+      case HASHMAP_AS_ZIPLIST:
+        visitHashFields(new ZipList.Cursor(readStringEncoded()));
+        break;
+      case QUICKLIST:
+        for (long i = readLength(); i > 0; --i) {
+          visitListElements(new ZipList.Cursor(readStringEncoded()));
+        }
+        break;
+      case HASHMAP_AS_LISTPACK:
+        visitHashFields(new ListpackList.Cursor(readStringEncoded()));
+        break;
+      case SORTED_SET_AS_LISTPACK:
+        visitSortedSet(new SortedSetAsListpack(readStringEncoded()).sortedSetCursor());
+        break;
+      case QUICKLIST2:
+        for (long i = readLength(); i > 0; --i) {
+          boolean plain = readLength() == QuickList2.CONTAINER_PLAIN;
+          byte[] node = readStringEncoded();
+          if (plain) {
+            visitor.onListElement(node);
+          } else {
+            visitListElements(new ListpackList.Cursor(node));
+          }
+        }
+        break;
+      case SET_AS_LISTPACK:
+        visitSetMembers(new ListpackList.Cursor(readStringEncoded()));
+        break;
+      case HASHMAP_WITH_METADATA_PRE_GA:
+      case HASHMAP_WITH_METADATA:
+        boolean gaType = valueType == ValueType.HASHMAP_WITH_METADATA;
+        if (gaType) {
+          nextEntry.minHashExpireTime = readExpirationMillis();
+        }
+        for (long i = readLength(); i > 0; --i) {
+          long hashExpiry = readHashFieldExpiry(gaType);
+          visitor.onHashField(readStringEncoded(), readStringEncoded(),
+                              hashExpiry > 0 ? hashExpiry : -1);
+        }
+        break;
+      case HASHMAP_AS_LISTPACK_EX_PRE_GA:
+      case HASHMAP_AS_LISTPACK_EX:
+        if (valueType == ValueType.HASHMAP_AS_LISTPACK_EX) {
+          nextEntry.minHashExpireTime = readExpirationMillis();
+        }
+        visitHashFieldsWithExpiry(new ListpackList.Cursor(readStringEncoded()));
+        break;
+      default: // never reached
+        throw new IllegalStateException("Unexpected value type: " + valueType);
+    }
+  }
+
+  private void visitListElements(ValueCursor cursor) {
+    while (cursor.next()) {
+      visitor.onListElement(cursor.getBytes());
+    }
+  }
+
+  private void visitSetMembers(ValueCursor cursor) {
+    while (cursor.next()) {
+      visitor.onSetMember(cursor.getBytes());
+    }
+  }
+
+  private void visitSortedSet(SortedSetCursor cursor) {
+    while (cursor.next()) {
+      visitor.onZsetMember(cursor.getMember().toByteArray(), cursor.getScore());
+    }
+  }
+
+  // Packed hashes are stored as flattened field/value pairs.
+  private void visitHashFields(ValueCursor cursor) {
+    while (cursor.next()) {
+      byte[] field = cursor.getBytes();
+      nextHashElement(cursor);
+      visitor.onHashField(field, cursor.getBytes(), -1);
+    }
+  }
+
+  // Packed hashes with expiration metadata are stored as flattened field/value/expire time
+  // triplets, with an expire time of 0 for fields that have none.
+  private void visitHashFieldsWithExpiry(ValueCursor cursor) {
+    while (cursor.next()) {
+      byte[] field = cursor.getBytes();
+      nextHashElement(cursor);
+      byte[] value = cursor.getBytes();
+      nextHashElement(cursor);
+      long expireTime = cursor.isInteger() ? cursor.getLong()
+          : Long.parseLong(new String(cursor.getBytes(), ASCII));
+      visitor.onHashField(field, value, expireTime > 0 ? expireTime : -1);
+    }
+  }
+
+  // Advances to the value or expire time of the current field, which a corrupt envelope may lack.
+  private static void nextHashElement(ValueCursor cursor) {
+    if (!cursor.next()) {
+      throw new IllegalStateException("Truncated hash envelope");
     }
-    nextEntry.values = new ListpackList(readStringEncoded());
   }
 
   /**
@@ -663,7 +1653,7 @@ public final class RdbParser implements AutoCloseable {
    */
   @Override
   public void close() throws IOException {
-    ch.close();
+    source.close();
   }
 
   /**
@@ -671,13 +1661,50 @@ public final class RdbParser implements AutoCloseable {
    * {@link ValueType#SORTED_SET_AS_ZIPLIST}.
    */
   public static double parseSortedSetScore(byte[] bytes) {
-    return Double.parseDouble(new String(bytes, ASCII));
+    return DoubleBytes.parse(bytes, 0, bytes.length);
   }
 
   /**
    * Parses the raw score of an element in a {@link ValueType#SORTED_SET2}.
    */
   public static double parseSortedSet2Score(byte[] bytes) {
-    return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getDouble();
+    return DoubleBytes.parseBinary(bytes, 0);
+  }
+
+  // A slice that is reused across entries in reuse mode, and the growable array it points into when
+  // its bytes are copied out of the parser's buffers.
+  private static final class SliceBuffer {
+
+    private byte[] bytes = new byte[64];
+    private ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+    final ByteSlice slice = new ByteSlice(wrapped, 0, 0);
+
+    byte[] ensureCapacity(int len) {
+      if (bytes.length < len) {
+        bytes = new byte[Math.max(len, 2 * bytes.length)];
+        wrapped = ByteBuffer.wrap(bytes);
+      }
+      return bytes;
+    }
+
+    ByteSlice point(ByteBuffer buf, int offset, int len) {
+      slice.reset(buf, offset, len);
+      return slice;
+    }
+
+    ByteSlice pointToBytes(int len) {
+      slice.reset(wrapped, 0, len);
+      return slice;
+    }
+
+    // Copies the bytes of the slice if it points into the given buffer, which is about to be
+    // refilled.
+    void detach(ByteBuffer buf) {
+      if (slice.isBackedBy(buf)) {
+        int len = slice.length();
+        slice.copyTo(ensureCapacity(len), 0);
+        pointToBytes(len);
+      }
+    }
   }
 }
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+/**
+ * <p>Receives the contents of an RDB file from {@link RdbParser#accept}, one callback at a time.
+ *
+ * <p>Unlike {@link RdbParser#readNext}, the visitor API never builds lists of values. The elements
+ * of lists, sets, sorted sets, and hashes are pushed to the visitor as they are decoded, either
+ * straight from the RDB file or from the packed encoding (ziplist, listpack, intset, etc.) they are
+ * stored in. Quicklists are decoded one node at a time. Memory use is therefore bounded by the
+ * largest single element or packed envelope, not by the number of elements in a key.
+ *
+ * <p>For each key/value pair, the parser calls {@link #onKeyStart}, then one of {@link #onValue},
+ * {@link #onListElement}, {@link #onSetMember}, {@link #onZsetMember}, or {@link #onHashField} for
+ * each element of the value, and finally {@link #onKeyEnd}.
+ *
+ * <p>All methods do nothing by default, so subclasses only override the callbacks they need.
+ *
+ * @author John Whitbeck
+ * @see RdbParser#accept
+ */
+public abstract class RdbVisitor {
+
+  /**
+   * Called for each auxiliary field.
+   *
+   * @param aux the auxiliary field
+   */
+  public void onAux(AuxField aux) {}
+
+  /**
+   * Called when a database is selected.
+   *
+   * @param selectDb the DB selection entry
+   */
+  public void onSelectDb(SelectDb selectDb) {}
+
+  /**
+   * Called for each resize DB entry.
+   *
+   * @param resizeDb the resize DB entry
+   */
+  public void onResizeDb(ResizeDb resizeDb) {}
+
+  /**
+   * Called when a key/value pair starts. The key/value pair holds the key, the value type, the
+   * expire time and the LRU/LFU information, but no values.
+   *
+   * @param kvp the key/value pair
+   */
+  public void onKeyStart(KeyValuePair kvp) {}
+
+  /**
+   * Called with the value of a string (i.e., a {@link ValueType#VALUE}). Integer-encoded strings
+   * are formatted as ASCII.
+   *
+   * @param value the string value
+   */
+  public void onValue(byte[] value) {}
+
+  /**
+   * Called for each element of a list, in order.
+   *
+   * @param element the list element
+   */
+  public void onListElement(byte[] element) {}
+
+  /**
+   * Called for each member of a set.
+   *
+   * @param member the set member
+   */
+  public void onSetMember(byte[] member) {}
+
+  /**
+   * Called for each member of a sorted set, with its score.
+   *
+   * @param member the sorted set member
+   * @param score the score of the member
+   */
+  public void onZsetMember(byte[] member, double score) {}
+
+  /**
+   * Called for each field of a hash.
+   *
+   * @param field the hash field
+   * @param value the value of the field
+   * @param expireTime the expire time of the field in milliseconds, or -1 if it has none
+   */
+  public void onHashField(byte[] field, byte[] value, long expireTime) {}
+
+  /**
+   * Called when a key/value pair ends. At this point, the key/value pair also holds the serialized
+   * value size and, for hashes with expiration metadata, the minimum expire time of its fields.
+   *
+   * @param kvp the key/value pair
+   */
+  public void onKeyEnd(KeyValuePair kvp) {}
+
+  /**
+   * Called at the end of the RDB file.
+   *
+   * @param eof the end-of-file entry
+   */
+  public void onEof(Eof eof) {}
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads a channel ahead of the parser on a dedicated I/O thread. The thread fills a ring of
+ * buffers and hands them over to the parser as soon as they are full, while the parser consumes
+ * the previous ones.
+ */
+final class ReadAheadBufferSource implements BufferSource {
+
+  // Marks the end of the stream in the queue of filled buffers.
+  private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+  private final ReadableByteChannel ch;
+  private final BlockingQueue<ByteBuffer> free;
+  private final BlockingQueue<ByteBuffer> filled;
+  private final Thread reader;
+  private volatile Throwable error = null;
+  private volatile boolean closed = false;
+  private ByteBuffer current = null;
+  private boolean endOfStream = false;
+
+  ReadAheadBufferSource(ReadableByteChannel ch, int numBuffers, int bufferSize) {
+    if (numBuffers < 2) {
+      throw new IllegalArgumentException("Read-ahead requires at least two buffers.");
+    }
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("Buffer size must be positive.");
+    }
+    this.ch = ch;
+    this.free = new ArrayBlockingQueue<ByteBuffer>(numBuffers);
+    // One extra slot so that the end-of-stream marker can always be enqueued without blocking.
+    this.filled = new ArrayBlockingQueue<ByteBuffer>(numBuffers + 1);
+    for (int i = 0; i < numBuffers; ++i) {
+      free.add(ByteBuffer.allocateDirect(bufferSize));
+    }
+    this.reader = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          readLoop();
+        }
+      }, "rdb-parser-read-ahead");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  private void readLoop() {
+    try {
+      while (true) {
+        ByteBuffer b = free.take();
+        ((Buffer)b).clear();
+        int n = 0;
+        while (b.hasRemaining() && (n = ch.read(b)) != -1) {
+          // Keep reading until the buffer is full or the stream ends.
+        }
+        ((Buffer)b).flip();
+        if (b.hasRemaining()) {
+          filled.put(b);
+        }
+        if (n == -1) {
+          filled.put(END_OF_STREAM);
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      // The source was closed.
+    } catch (Throwable t) {
+      if (!closed) {
+        error = t;
+      }
+      filled.offer(END_OF_STREAM);
+    }
+  }
+
+  @Override
+  public ByteBuffer next() throws IOException {
+    if (endOfStream) {
+      return null;
+    }
+    if (current != null) {
+      free.add(current);
+      current = null;
+    }
+    ByteBuffer b;
+    try {
+      b = filled.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the read-ahead thread.");
+    }
+    if (b == END_OF_STREAM) {
+      endOfStream = true;
+      if (error != null) {
+        throw new IOException("Read-ahead thread failed to read from the channel.", error);
+      }
+      return null;
+    }
+    current = b;
+    return b;
+  }
+
+  @Override
+  public long skip(long numBytes) {
+    // The I/O thread is already reading ahead, so skipped bytes are read through.
+    return 0;
+  }
+
+  @Override
+  public void seek(long position) {
+    throw new UnsupportedOperationException("Seeking is not supported in read-ahead mode.");
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    reader.interrupt();
+    ch.close();
+  }
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the RDB payload that a Redis master sends to a replica during a full resynchronization.
+ *
+ * <p>The payload is sent as a bulk string, either with its length up front ({@code $<len>\r\n}),
+ * or, with diskless replication, with a random 40-byte mark up front ({@code $EOF:<mark>\r\n})
+ * that is repeated right after the payload. In the latter case, the last 39 bytes read are held
+ * back until more bytes arrive, such that the mark is detected even when it straddles two reads,
+ * and is never handed to the parser.
+ */
+final class ReplicationBufferSource implements BufferSource {
+
+  private static final Charset ASCII = Charset.forName("ASCII");
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_LINE_LENGTH = 1024;
+  static final int MARK_LENGTH = 40;
+
+  private final ReadableByteChannel ch;
+  private final byte[] data = new byte[BUFFER_SIZE];
+  private final ByteBuffer readBuf = ByteBuffer.wrap(data);
+  // The bytes in data[pos, end) have been read from the channel but not handed out yet.
+  private int pos = 0;
+  private int end = 0;
+  // The end-of-payload mark with diskless replication, or null if the payload length is known.
+  private byte[] mark = null;
+  private long remaining = 0;
+  private boolean done = false;
+
+  ReplicationBufferSource(ReadableByteChannel ch) {
+    this.ch = ch;
+  }
+
+  /**
+   * Performs the replica side of the replication handshake, up to and including the
+   * {@code +FULLRESYNC} reply of the master.
+   */
+  void handshake(ByteChannel ch, String password) throws IOException {
+    if (password != null) {
+      sendCommand(ch, "AUTH", password);
+      expectOk("AUTH");
+    }
+    // Advertise support for the diskless format, otherwise the master falls back to sending the
+    // length of the payload, which requires it to write the RDB file to disk first.
+    sendCommand(ch, "REPLCONF", "capa", "eof", "capa", "psync2");
+    expectOk("REPLCONF");
+    sendCommand(ch, "PSYNC", "?", "-1");
+    String reply = readLine();
+    if (!reply.startsWith("+FULLRESYNC")) {
+      throw new IOException("Unexpected reply to PSYNC: " + reply);
+    }
+  }
+
+  private void expectOk(String command) throws IOException {
+    String reply = readLine();
+    if (!reply.equals("+OK")) {
+      throw new IOException("Unexpected reply to " + command + ": " + reply);
+    }
+  }
+
+  private static void sendCommand(ByteChannel ch, String... args) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    writeAscii(bytes, "*" + args.length + "\r\n");
+    for (String arg : args) {
+      byte[] argBytes = arg.getBytes(UTF8);
+      writeAscii(bytes, "$" + argBytes.length + "\r\n");
+      bytes.write(argBytes, 0, argBytes.length);
+      writeAscii(bytes, "\r\n");
+    }
+    ByteBuffer out = ByteBuffer.wrap(bytes.toByteArray());
+    while (out.hasRemaining()) {
+      ch.write(out);
+    }
+  }
+
+  private static void writeAscii(ByteArrayOutputStream out, String s) {
+    byte[] bytes = s.getBytes(ASCII);
+    out.write(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Reads the header of the bulk string that holds the payload.
+   */
+  void readPayloadHeader() throws IOException {
+    String header = readLine();
+    if (!header.startsWith("$")) {
+      throw new IOException("Unexpected RDB payload header: " + header);
+    }
+    if (header.startsWith("$EOF:")) {
+      mark = header.substring(5).getBytes(ASCII);
+      if (mark.length != MARK_LENGTH) {
+        throw new IOException("Invalid end-of-payload mark: " + header);
+      }
+    } else {
+      try {
+        remaining = Long.parseLong(header.substring(1));
+      } catch (NumberFormatException e) {
+        throw new IOException("Invalid RDB payload length: " + header);
+      }
+      if (remaining < 0) {
+        throw new IOException("Invalid RDB payload length: " + header);
+      }
+    }
+  }
+
+  // Reads a CRLF-terminated line, skipping the newlines that masters send as keep-alives while
+  // they prepare the payload.
+  private String readLine() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    while (true) {
+      if (pos == end) {
+        pos = 0;
+        end = 0;
+        fill();
+      }
+      byte b = data[pos++];
+      if (b == '\n') {
+        int len = sb.length();
+        if (len > 0 && sb.charAt(len - 1) == '\r') {
+          sb.setLength(len - 1);
+          return sb.toString();
+        }
+        // A keep-alive.
+        continue;
+      }
+      if (sb.length() == MAX_LINE_LENGTH) {
+        throw new IOException("Reply line too long.");
+      }
+      sb.append((char)(b & 0xff));
+    }
+  }
+
+  private void fill() throws IOException {
+    ((Buffer)readBuf).limit(data.length).position(end);
+    int n = ch.read(readBuf);
+    if (n < 0) {
+      throw new IOException("Connection closed before the end of the RDB payload.");
+    }
+    if (n == 0) {
+      throw new IllegalStateException("The replication channel must be in blocking mode.");
+    }
+    end += n;
+  }
+
+  @Override
+  public ByteBuffer next() throws IOException {
+    if (done) {
+      return null;
+    }
+    return mark == null ? nextWithLength() : nextWithMark();
+  }
+
+  private ByteBuffer nextWithLength() throws IOException {
+    if (remaining == 0) {
+      done = true;
+      return null;
+    }
+    if (pos == end) {
+      pos = 0;
+      end = 0;
+      fill();
+    }
+    int n = (int)Math.min(end - pos, remaining);
+    ByteBuffer buf = ByteBuffer.wrap(data, pos, n);
+    pos += n;
+    remaining -= n;
+    return buf;
+  }
+
+  private ByteBuffer nextWithMark() throws IOException {
+    while (true) {
+      if (pos > 0) {
+        // Move the held back bytes to the front.
+        System.arraycopy(data, pos, data, 0, end - pos);
+        end -= pos;
+        pos = 0;
+      }
+      int markPos = indexOfMark();
+      if (markPos >= 0) {
+        // Anything after the mark belongs to the replication stream, not to the payload.
+        done = true;
+        return markPos > 0 ? ByteBuffer.wrap(data, 0, markPos) : null;
+      }
+      int n = end - (MARK_LENGTH - 1);
+      if (n > 0) {
+        pos = n;
+        return ByteBuffer.wrap(data, 0, n);
+      }
+      fill();
+    }
+  }
+
+  private int indexOfMark() {
+    byte first = mark[0];
+    for (int i = 0, last = end - MARK_LENGTH; i <= last; ++i) {
+      if (data[i] != first) {
+        continue;
+      }
+      int j = 1;
+      while (j < MARK_LENGTH && data[i + j] == mark[j]) {
+        j += 1;
+      }
+      if (j == MARK_LENGTH) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public long skip(long numBytes) {
+    return 0;
+  }
+
+  @Override
+  public void seek(long position) {
+    throw new UnsupportedOperationException("Cannot seek a replication stream.");
+  }
+
+  @Override
+  public void close() throws IOException {
+    ch.close();
+  }
+}
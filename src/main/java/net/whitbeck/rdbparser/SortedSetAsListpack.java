@@ -17,7 +17,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.ListIterator;
 
-final class SortedSetAsListpack extends LazyList<byte[]> {
+final class SortedSetAsListpack extends LazyList {
 
   private static final Charset ASCII = Charset.forName("ASCII");
 
@@ -31,6 +31,20 @@ final class SortedSetAsListpack extends LazyList<byte[]> {
     this.envelope = envelope;
   }
 
+  @Override
+  ValueCursor cursor() {
+    return new SortedSetAsZipList.ScoreCursor(new ListpackList.Cursor(envelope));
+  }
+
+  SortedSetCursor sortedSetCursor() {
+    return new FlatSortedSetCursor(new ListpackList.Cursor(envelope), false);
+  }
+
+  @Override
+  int sizeHint() {
+    return ListpackList.numElements(envelope);
+  }
+
   @Override
   protected List<byte[]> realize() {
     List<byte[]> values = new ListpackList(envelope).realize();
@@ -17,7 +17,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.ListIterator;
 
-final class SortedSetAsZipList extends LazyList<byte[]> {
+final class SortedSetAsZipList extends LazyList {
 
   private static final Charset ASCII = Charset.forName("ASCII");
 
@@ -31,6 +31,20 @@ final class SortedSetAsZipList extends LazyList<byte[]> {
     this.envelope = envelope;
   }
 
+  @Override
+  ValueCursor cursor() {
+    return new ScoreCursor(new ZipList.Cursor(envelope));
+  }
+
+  SortedSetCursor sortedSetCursor() {
+    return new FlatSortedSetCursor(new ZipList.Cursor(envelope), false);
+  }
+
+  @Override
+  int sizeHint() {
+    return ZipList.numElements(envelope);
+  }
+
   @Override
   protected List<byte[]> realize() {
     List<byte[]> values = new ZipList(envelope).realize();
@@ -47,4 +61,43 @@ final class SortedSetAsZipList extends LazyList<byte[]> {
     }
     return values;
   }
+
+  // Fixes the "+inf", "-inf", and "nan" values like realize does.
+  static final class ScoreCursor implements ValueCursor {
+    private final ValueCursor cursor;
+
+    ScoreCursor(ValueCursor cursor) {
+      this.cursor = cursor;
+    }
+
+    @Override
+    public boolean next() {
+      return cursor.next();
+    }
+
+    @Override
+    public boolean isInteger() {
+      return cursor.isInteger();
+    }
+
+    @Override
+    public long getLong() {
+      return cursor.getLong();
+    }
+
+    @Override
+    public byte[] getBytes() {
+      byte[] val = cursor.getBytes();
+      if (cursor.isInteger()) {
+        return val;
+      } else if (Arrays.equals(val, POS_INF_BYTES)) {
+        return DoubleBytes.POSITIVE_INFINITY;
+      } else if (Arrays.equals(val, NEG_INF_BYTES)) {
+        return DoubleBytes.NEGATIVE_INFINITY;
+      } else if (Arrays.equals(val, NAN_BYTES)) {
+        return DoubleBytes.NaN;
+      }
+      return val;
+    }
+  }
 }
@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+/**
+ * <p>Iterates over the members of a sorted set and their scores, for all sorted-set encodings.
+ *
+ * <p>Scores are returned as primitive doubles, whether they are stored as ASCII strings
+ * (SORTED_SET), as 8-byte binary doubles (SORTED_SET2), or as integers or strings inside a ziplist
+ * or listpack (SORTED_SET_AS_ZIPLIST and SORTED_SET_AS_LISTPACK). Each score is parsed once, when
+ * the cursor advances to it.
+ *
+ * <p>For example, the following finds the highest score of a sorted set.
+ *
+ * <pre>{@code
+ * SortedSetCursor cursor = kvp.getSortedSetCursor();
+ * double max = Double.NEGATIVE_INFINITY;
+ * while (cursor.next()) {
+ *   max = Math.max(max, cursor.getScore());
+ * }
+ * }</pre>
+ *
+ * @author John Whitbeck
+ * @see KeyValuePair#getSortedSetCursor
+ */
+public interface SortedSetCursor {
+
+  /**
+   * Advances to the next member of the sorted set.
+   *
+   * @return true if there is a next member, false once all members have been visited.
+   */
+  boolean next();
+
+  /**
+   * Returns the current member. For ziplist and listpack encodings, the slice is a view over the
+   * encoded sorted set, and is not copied.
+   *
+   * @return the current member
+   */
+  ByteSlice getMember();
+
+  /**
+   * Returns the score of the current member.
+   *
+   * @return the current score
+   */
+  double getScore();
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * The values of the unpacked LIST, SET, and HASH encodings. Elements stored as integer-encoded
+ * strings are kept as longs, such that the cursor over the list reports them as integers. They are
+ * only formatted to ASCII the first time they are accessed as byte arrays.
+ */
+final class StringList extends AbstractList<byte[]> implements RandomAccess {
+
+  // Null for integers that have not been formatted yet.
+  private final byte[][] values;
+  // Allocated when the first integer is added, such that lists of plain strings pay nothing.
+  private long[] ints = null;
+  private boolean[] isInt = null;
+  private int size = 0;
+
+  StringList(int capacity) {
+    this.values = new byte[capacity][];
+  }
+
+  void addString(byte[] value) {
+    values[size++] = value;
+  }
+
+  void addInteger(long value) {
+    if (ints == null) {
+      ints = new long[values.length];
+      isInt = new boolean[values.length];
+    }
+    ints[size] = value;
+    isInt[size++] = true;
+  }
+
+  private byte[] bytes(int index) {
+    byte[] bytes = values[index];
+    if (bytes == null) {
+      bytes = IntegerBytes.format(ints[index]);
+      values[index] = bytes;
+    }
+    return bytes;
+  }
+
+  @Override
+  public byte[] get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return bytes(index);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  ValueCursor cursor() {
+    return new Cursor();
+  }
+
+  private final class Cursor implements ValueCursor {
+    private int idx = -1;
+
+    @Override
+    public boolean next() {
+      if (idx + 1 == size) {
+        return false;
+      }
+      idx += 1;
+      return true;
+    }
+
+    @Override
+    public boolean isInteger() {
+      return isInt != null && isInt[idx];
+    }
+
+    @Override
+    public long getLong() {
+      if (!isInteger()) {
+        throw new IllegalStateException("Current value is not an integer.");
+      }
+      return ints[idx];
+    }
+
+    @Override
+    public byte[] getBytes() {
+      return bytes(idx);
+    }
+  }
+}
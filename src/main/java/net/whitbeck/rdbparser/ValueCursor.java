@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+/**
+ * <p>Iterates over the values of a key/value pair, exposing integer-encoded values as longs.
+ *
+ * <p>Redis stores small integers in compact integer encodings (e.g., in strings, intsets,
+ * ziplists, and listpacks). Whereas {@link KeyValuePair#getValues} formats these integers as ASCII
+ * byte arrays, a cursor returns them through {@link #getLong} without any formatting or allocation.
+ * Values are visited in the same order as in {@link KeyValuePair#getValues}.
+ *
+ * <p>For example, the following sums the integers in a list.
+ *
+ * <pre>{@code
+ * ValueCursor cursor = kvp.getValueCursor();
+ * long sum = 0;
+ * while (cursor.next()) {
+ *   sum += cursor.isInteger() ? cursor.getLong() : Long.parseLong(new String(cursor.getBytes()));
+ * }
+ * }</pre>
+ *
+ * @author John Whitbeck
+ * @see KeyValuePair#getValueCursor
+ */
+public interface ValueCursor {
+
+  /**
+   * Advances to the next value.
+   *
+   * @return true if there is a next value, false once all values have been visited.
+   */
+  boolean next();
+
+  /**
+   * Returns true if the current value is stored with an integer encoding in the RDB file. Numeric
+   * strings that Redis did not encode as integers (e.g., the members of sorted sets of the
+   * SORTED_SET type, or the fields of hashes with field expirations) are not reported as integers.
+   *
+   * @return true if the current value is an integer.
+   */
+  boolean isInteger();
+
+  /**
+   * Returns the current value as a long.
+   *
+   * @return the current integer value
+   *
+   * @throws IllegalStateException if the current value is not an integer.
+   */
+  long getLong();
+
+  /**
+   * Returns the current value as a byte array, formatting it as ASCII if it is an integer. As with
+   * {@link KeyValuePair#getValues}, the byte arrays of small integers are shared and must not be
+   * modified.
+   *
+   * @return the current value
+   */
+  byte[] getBytes();
+}
@@ -12,30 +12,80 @@
 
 package net.whitbeck.rdbparser;
 
-import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 
-final class ZipList extends LazyList<byte[]> {
+final class ZipList extends LazyList {
 
-  private static final Charset ASCII = Charset.forName("ASCII");
   private final byte[] envelope;
 
   ZipList(byte[] envelope) {
     this.envelope = envelope;
   }
 
+  // The number of elements is only stored in the header if it is less than 65535.
+  private static final int UNKNOWN_NUM_ELEMENTS = 0xffff;
+
+  @Override
+  Cursor cursor() {
+    return new Cursor(envelope);
+  }
+
+  @Override
+  int sizeHint() {
+    return numElements(envelope);
+  }
+
+  static int numElements(byte[] envelope) {
+    // read number of elements as a 2 byte little-endian integer after the first 8 bytes
+    int num = ((int)envelope[8] & 0xff) << 0
+            | ((int)envelope[9] & 0xff) << 8;
+    return num == UNKNOWN_NUM_ELEMENTS ? -1 : num;
+  }
+
+  // Returns the number of elements, counting them if the header does not store it.
+  static int countElements(byte[] envelope) {
+    int num = numElements(envelope);
+    if (num >= 0) {
+      return num;
+    }
+    Cursor cursor = new Cursor(envelope);
+    num = 0;
+    while (cursor.next()) {
+      num += 1;
+    }
+    return num;
+  }
+
   @Override
   protected List<byte[]> realize() {
-    // skip the first 8 bytes representing the total size in bytes of the ziplist and the offset to
-    // the last element.
-    int pos = 8;
-    // read number of elements as a 2 byte little-endian integer
-    int num = ((int)envelope[pos++] & 0xff) << 0
-            | ((int)envelope[pos++] & 0xff) << 8;
-    List<byte[]> list = new ArrayList<byte[]>(num);
-    int idx = 0;
-    while (idx < num) {
+    Cursor cursor = cursor();
+    List<byte[]> list = new ArrayList<byte[]>(Math.max(0, sizeHint()));
+    while (cursor.next()) {
+      list.add(cursor.getBytes());
+    }
+    return list;
+  }
+
+  static final class Cursor extends EnvelopeCursor {
+
+    private final int num;
+    private int idx = 0;
+
+    Cursor(byte[] envelope) {
+      // skip the first 8 bytes representing the total size in bytes of the ziplist and the offset
+      // to the last element, and the 2 bytes of the number of elements.
+      super(envelope, 10);
+      num = numElements(envelope);
+    }
+
+    @Override
+    public boolean next() {
+      if (num < 0 ? ((int)envelope[pos] & 0xff) == 0xff : idx == num) {
+        // either read all elements or, if their number is unknown, reached the end byte
+        return false;
+      }
+      idx += 1;
       // skip length of previous entry. If len is <= 253 (0xfd), it represents the length of the
       // previous entry, otherwise, the next four bytes are used to store the length
       int prevLen = (int)envelope[pos++] & 0xff;
@@ -45,21 +95,16 @@ final class ZipList extends LazyList<byte[]> {
       int special = (int)envelope[pos++] & 0xff;
       int top2bits = special >> 6;
       int len;
-      byte[] buf;
       switch (top2bits) {
         case 0: // string value with length less than or equal to 63 bytes (6 bits)
           len = special & 0x3f;
-          buf = new byte[len];
-          System.arraycopy(envelope, pos, buf, 0, len);
+          setString(pos, len);
           pos += len;
-          list.add(buf);
           break;
         case 1: // String value with length less than or equal to 16383 bytes (14 bits).
           len = ((special & 0x3f) << 8) | ((int)envelope[pos++] & 0xff);
-          buf = new byte[len];
-          System.arraycopy(envelope, pos, buf, 0, len);
+          setString(pos, len);
           pos += len;
-          list.add(buf);
           break;
         case 2: /* String value with length greater than or equal to 16384 bytes. Length is read
                    from 4 following bytes. */
@@ -67,54 +112,46 @@ final class ZipList extends LazyList<byte[]> {
               | ((int)envelope[pos++] & 0xff) << 16
               | ((int)envelope[pos++] & 0xff) <<  8
               | ((int)envelope[pos++] & 0xff) <<  0;
-          buf = new byte[len];
-          System.arraycopy(envelope, pos, buf, 0, len);
+          setString(pos, len);
           pos += len;
-          list.add(buf);
           break;
         case 3: // integer encodings
           int flag = (special & 0x30) >> 4;
-          long val;
           switch (flag) {
             case 0: // read next 2 bytes as a 16 bit signed integer
-              val = (long)envelope[pos++] & 0xff
-                  | (long)envelope[pos++] << 8;
-              list.add(String.valueOf(val).getBytes(ASCII));
+              setInt((long)envelope[pos++] & 0xff
+                     | (long)envelope[pos++] << 8);
               break;
             case 1: // read next 4 bytes as a 32 bit signed integer
-              val = ((long)envelope[pos++] & 0xff) <<  0
-                  | ((long)envelope[pos++] & 0xff) <<  8
-                  | ((long)envelope[pos++] & 0xff) << 16
-                  |  (long)envelope[pos++]         << 24;
-              list.add(String.valueOf(val).getBytes(ASCII));
+              setInt(((long)envelope[pos++] & 0xff) <<  0
+                     | ((long)envelope[pos++] & 0xff) <<  8
+                     | ((long)envelope[pos++] & 0xff) << 16
+                     |  (long)envelope[pos++]         << 24);
               break;
             case 2: // read next 8 as a 64 bit signed integer
-              val = ((long)envelope[pos++] & 0xff) <<  0
-                  | ((long)envelope[pos++] & 0xff) <<  8
-                  | ((long)envelope[pos++] & 0xff) << 16
-                  | ((long)envelope[pos++] & 0xff) << 24
-                  | ((long)envelope[pos++] & 0xff) << 32
-                  | ((long)envelope[pos++] & 0xff) << 40
-                  | ((long)envelope[pos++] & 0xff) << 48
-                  |  (long)envelope[pos++]         << 56;
-              list.add(String.valueOf(val).getBytes(ASCII));
+              setInt(((long)envelope[pos++] & 0xff) <<  0
+                     | ((long)envelope[pos++] & 0xff) <<  8
+                     | ((long)envelope[pos++] & 0xff) << 16
+                     | ((long)envelope[pos++] & 0xff) << 24
+                     | ((long)envelope[pos++] & 0xff) << 32
+                     | ((long)envelope[pos++] & 0xff) << 40
+                     | ((long)envelope[pos++] & 0xff) << 48
+                     |  (long)envelope[pos++]         << 56);
               break;
             case 3:
               int loBits = special & 0x0f;
               switch (loBits) {
                 case 0: // read next 3 bytes as a 24 bit signed integer
-                  val = ((long)envelope[pos++] & 0xff) <<  0
-                      | ((long)envelope[pos++] & 0xff) <<  8
-                      |  (long)envelope[pos++]         << 16;
-                  list.add(String.valueOf(val).getBytes(ASCII));
+                  setInt(((long)envelope[pos++] & 0xff) <<  0
+                         | ((long)envelope[pos++] & 0xff) <<  8
+                         |  (long)envelope[pos++]         << 16);
                   break;
                 case 0x0e: // read next byte as an 8 bit signed integer
-                  val = (long)envelope[pos++];
-                  list.add(String.valueOf(val).getBytes(ASCII));
+                  setInt((long)envelope[pos++]);
                   break;
                 default: /* an immediate 4 bit unsigned integer between 0 and 12. Substract 1 as the
                             range is actually between 1 and 13. */
-                  list.add(String.valueOf(loBits - 1).getBytes(ASCII));
+                  setInt(loBits - 1);
                   break;
               }
               break;
@@ -123,8 +160,7 @@ final class ZipList extends LazyList<byte[]> {
           break;
         default: // never reached
       }
-      idx += 1;
+      return true;
     }
-    return list;
   }
 }
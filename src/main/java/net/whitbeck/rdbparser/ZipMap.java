@@ -15,7 +15,7 @@ package net.whitbeck.rdbparser;
 import java.util.ArrayList;
 import java.util.List;
 
-final class ZipMap extends LazyList<byte[]> {
+final class ZipMap extends LazyList {
 
   private final byte[] envelope;
 
@@ -24,61 +24,68 @@ final class ZipMap extends LazyList<byte[]> {
   }
 
   @Override
-  protected List<byte[]> realize() {
-    // The structure of the zip map is:
-    // <zmlen><len>"foo"<len><free>"bar"<len>"hello"<len><free>"world"<zmend>
+  Cursor cursor() {
+    return new Cursor(envelope);
+  }
 
-    int pos = 0;
+  @Override
+  int sizeHint() {
     // The first byte holds the size of the zip map. If it is greater than or equal to 254,
     // value is not used and we will have to iterate the entire zip map to find the length.
-    int zmlen = (int)envelope[pos++] & 0xff;
-    List<byte[]> list = zmlen < 254 ? new ArrayList<byte[]>(2*zmlen) : new ArrayList<byte[]>();
-    while (true) {
-      int b = (int)envelope[pos++] & 0xff;
-      if (b == 255) { // reached end of zipmap
-        break;
-      }
-      // Read a key/value pair.
+    int zmlen = (int)envelope[0] & 0xff;
+    return zmlen < 254 ? 2 * zmlen : -1;
+  }
 
-      // Read the length of the following string, which can be either a key or a value. This length
-      // is stored in either 1 byte or 5 bytes. If the first byte is between 0 and 252, that is the
-      // length of the value. If the first byte is 253, then the next 4 bytes read as an unsigned
-      // integer represent the length of the zipmap. 254 and 255 are invalid values for this field.
-      int len = 0;
-      if (b < 253) {
-        len = b;
-      } else {
-        len = ((int)envelope[pos++] & 0xff) <<  24
-            | ((int)envelope[pos++] & 0xff) <<  16
-            | ((int)envelope[pos++] & 0xff) << 8
-            | ((int)envelope[pos++] & 0xff) << 0;
-      }
-      // Read the key.
-      byte[] buf = new byte[len];
-      System.arraycopy(envelope, pos, buf, 0, len);
-      pos += len;
-      list.add(buf);
+  @Override
+  protected List<byte[]> realize() {
+    Cursor cursor = cursor();
+    int size = sizeHint();
+    List<byte[]> list = size >= 0 ? new ArrayList<byte[]>(size) : new ArrayList<byte[]>();
+    while (cursor.next()) {
+      list.add(cursor.getBytes());
+    }
+    return list;
+  }
+
+  static final class Cursor extends EnvelopeCursor {
+
+    private boolean atKey = true;
 
-      // Read the length of the value (similar to the length of the key).
-      b = (int)envelope[pos++] & 0xff;
-      len = 0;
-      if (b < 253) {
+    Cursor(byte[] envelope) {
+      // The structure of the zip map is:
+      // <zmlen><len>"foo"<len><free>"bar"<len>"hello"<len><free>"world"<zmend>
+      super(envelope, 1);
+    }
+
+    @Override
+    public boolean next() {
+      int b = (int)envelope[pos] & 0xff;
+      if (atKey && b == 255) { // reached end of zipmap
+        return false;
+      }
+      pos++;
+      // Read the length of the following string, which can be either a key or a value. This length
+      // is stored in either 1 byte or 5 bytes. If the first byte is between 0 and 253, that is the
+      // length of the value. If the first byte is 254, then the next 4 bytes read as an unsigned
+      // little-endian integer represent the length of the string. 255 is an invalid value for this
+      // field. See zipmapDecodeLength in zipmap.c.
+      int len;
+      if (b < 254) {
         len = b;
       } else {
-        len = ((int)envelope[pos++] & 0xff) <<  24
-            | ((int)envelope[pos++] & 0xff) <<  16
-            | ((int)envelope[pos++] & 0xff) << 8
-            | ((int)envelope[pos++] & 0xff) << 0;
+        len = ((int)envelope[pos++] & 0xff) <<  0
+            | ((int)envelope[pos++] & 0xff) <<  8
+            | ((int)envelope[pos++] & 0xff) << 16
+            | ((int)envelope[pos++] & 0xff) << 24;
       }
-      // Read the number of free bytes after the value. This is always 1 byte.For example, if the
-      // value of a key is “America” and its get updated to “USA”, 4 free bytes will be available.
-      int free = (int)envelope[pos++] & 0xff;
-      // Read the value.
-      buf = new byte[len];
-      System.arraycopy(envelope, pos, buf, 0, len);
+      // Values are followed by the number of free bytes after the value. This is always 1 byte. For
+      // example, if the value of a key is “America” and its get updated to “USA”, 4 free bytes will
+      // be available.
+      int free = atKey ? 0 : (int)envelope[pos++] & 0xff;
+      setString(pos, len);
       pos += len + free;
-      list.add(buf);
+      atKey = !atKey;
+      return true;
     }
-    return list;
   }
 }
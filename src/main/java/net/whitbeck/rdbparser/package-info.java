@@ -19,6 +19,10 @@
  * application-level decisions like how to interpret the contents of the returned byte arrays or
  * what types of objects to instantiate from them.
  *
+ * <p>The returned byte arrays must be treated as read-only. Small integers stored with an integer
+ * encoding (e.g., ziplist immediates) are formatted once and the same byte array is returned every
+ * time they occur, in keys, values, aux fields, and visitor callbacks alike.
+ *
  * <p>For example, sorted sets and hashes are parsed as a flat list of value/score pairs and
  * key/value pairs, respectively. Simple Redis values are parsed as a singleton. As expected, Redis
  * lists and sets are parsed as lists of values.
@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * <p>The use and distribution terms for this software are covered by the
+ * Apache License 2.0 (https://www.apache.org/licenses/LICENSE-2.0.txt)
+ * which can be found in the file al-v20.txt at the root of this distribution.
+ * By using this software in any fashion, you are agreeing to be bound by
+ * the terms of this license.
+ *
+ * <p>You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Publishes the entries of an {@link RdbParser} to a single {@link Flow.Subscriber}.
+ *
+ * <p>Entries are only read and decoded when the subscriber has requested them. Reading runs as
+ * tasks on an executor rather than on a dedicated thread: each task emits at most
+ * {@code batchSize} entries before yielding the executor thread to other publishers, such that a
+ * small pool can serve many concurrent files. A publisher with no outstanding demand holds no
+ * thread at all.
+ *
+ * <p>Entries are passed to {@link Flow.Subscriber#onNext} as returned by {@link RdbParser#readNext},
+ * so in zero-copy or reuse mode they are only valid until {@code onNext} returns. The subscriber is
+ * completed after the {@link Eof} entry. The parser is closed once the subscriber is completed,
+ * fails, or cancels its subscription.
+ *
+ * <p>An RdbPublisher can only be subscribed to once. Later subscribers are immediately failed with
+ * an IllegalStateException.
+ *
+ * <p>Unlike the rest of the library, which runs on Java 8, this class requires Java 11. It is
+ * shipped in the Java 11 layer of the multi-release jar.
+ *
+ * @author John Whitbeck
+ */
+public final class RdbPublisher implements Flow.Publisher<Entry> {
+
+  static final int DEFAULT_BATCH_SIZE = 256;
+
+  private final RdbParser parser;
+  private final Executor executor;
+  private final int batchSize;
+  private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+  /**
+   * Creates a publisher that reads entries on the common fork-join pool.
+   *
+   * @param parser the parser to read entries from
+   */
+  public RdbPublisher(RdbParser parser) {
+    this(parser, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Creates a publisher that reads entries on the given executor.
+   *
+   * @param parser the parser to read entries from
+   * @param executor the executor to run read tasks on
+   * @param batchSize the maximum number of entries emitted by a single read task
+   */
+  public RdbPublisher(RdbParser parser, Executor executor, int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive.");
+    }
+    this.parser = parser;
+    this.executor = executor;
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super Entry> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("Subscriber cannot be null.");
+    }
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+          @Override
+          public void request(long n) {}
+
+          @Override
+          public void cancel() {}
+        });
+      subscriber.onError(new IllegalStateException("RdbPublisher only supports one subscriber."));
+      return;
+    }
+    Subscription subscription = new Subscription(subscriber);
+    subscriber.onSubscribe(subscription);
+  }
+
+  private final class Subscription implements Flow.Subscription, Runnable {
+
+    private final Flow.Subscriber<? super Entry> subscriber;
+    private final AtomicLong requested = new AtomicLong();
+    // Counts the signals (requests and cancellations) not yet handled by a read task. The task is
+    // only scheduled by the signal that moves it away from zero, such that at most one read task
+    // runs at a time.
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean cancelled = false;
+    private volatile Throwable error = null;
+    private boolean done = false;
+
+    Subscription(Flow.Subscriber<? super Entry> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        error = new IllegalArgumentException("Requested number of entries must be positive.");
+      } else {
+        long r;
+        long u;
+        do {
+          r = requested.get();
+          u = r + n < 0 ? Long.MAX_VALUE : r + n;
+        } while (!requested.compareAndSet(r, u));
+      }
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      schedule();
+    }
+
+    private void schedule() {
+      if (pending.getAndIncrement() == 0) {
+        try {
+          executor.execute(this);
+        } catch (RuntimeException e) {
+          // e.g., the executor was shut down
+          cancelled = true;
+          closeParser();
+          subscriber.onError(e);
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      int missed = 1;
+      while (true) {
+        if (done) {
+          return;
+        }
+        if (cancelled) {
+          done = true;
+          closeParser();
+          return;
+        }
+        Throwable t = error;
+        if (t != null) {
+          fail(t);
+          return;
+        }
+        long r = requested.get();
+        long emitted = 0;
+        while (emitted < r && emitted < batchSize) {
+          if (cancelled) {
+            break;
+          }
+          Entry entry;
+          try {
+            entry = parser.readNext();
+          } catch (IOException | RuntimeException e) {
+            fail(e);
+            return;
+          }
+          if (entry == null) {
+            complete();
+            return;
+          }
+          emitted += 1;
+          try {
+            subscriber.onNext(entry);
+          } catch (RuntimeException e) {
+            // A misbehaving subscriber, treat it as a cancellation.
+            cancelled = true;
+            break;
+          }
+          if (entry.getType() == EntryType.EOF) {
+            complete();
+            return;
+          }
+        }
+        if (emitted > 0 && r != Long.MAX_VALUE) {
+          r = requested.addAndGet(-emitted);
+        }
+        if (cancelled) {
+          continue;
+        }
+        if (emitted == batchSize && r > 0) {
+          // Yield the executor thread to other tasks. The pending count is left as is, such that
+          // no other read task can be scheduled in the meantime.
+          try {
+            executor.execute(this);
+          } catch (RuntimeException e) {
+            fail(e);
+          }
+          return;
+        }
+        missed = pending.addAndGet(-missed);
+        if (missed == 0) {
+          return;
+        }
+      }
+    }
+
+    private void complete() {
+      done = true;
+      closeParser();
+      subscriber.onComplete();
+    }
+
+    private void fail(Throwable t) {
+      done = true;
+      closeParser();
+      subscriber.onError(t);
+    }
+
+    private void closeParser() {
+      try {
+        parser.close();
+      } catch (IOException e) {
+        // Nothing left to report it to.
+      }
+    }
+  }
+}
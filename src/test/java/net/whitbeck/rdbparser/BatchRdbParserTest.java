@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * The use and distribution terms for this software are covered by the Apache License 2.0
+ * (https://www.apache.org/licenses/LICENSE-2.0.txt) which can be found in the file al-v20.txt at
+ * the root of this distribution. By using this software in any fashion, you are agreeing to be
+ * bound by the terms of this license.
+ *
+ * You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchRdbParserTest {
+
+  private final List<Path> paths = new ArrayList<Path>();
+
+  @Before
+  public void writeFiles() throws Exception {
+    for (int i = 0; i < 4; ++i) {
+      RdbFileBuilder rdb = new RdbFileBuilder(9).selectDb(i);
+      for (int j = 0; j <= i; ++j) {
+        rdb.write(0).string("key" + j).string("value" + j);
+      }
+      File file = File.createTempFile("batch", ".rdb");
+      Files.write(file.toPath(), rdb.eof().toByteArray());
+      paths.add(file.toPath());
+    }
+  }
+
+  @After
+  public void deleteFiles() throws Exception {
+    for (Path path : paths) {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public void parseAll() throws Exception {
+    try (BatchRdbParser batch = new BatchRdbParser(2)) {
+      List<RdbFileResult<Integer>> results = batch.parseAll(paths, new RdbFileTask<Integer>() {
+          @Override
+          public Integer parse(RdbHeader header, RdbParser parser) throws Exception {
+            int numKeys = 0;
+            Entry e;
+            while ((e = parser.readNext()) != null) {
+              if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+                numKeys += 1;
+              }
+            }
+            return numKeys;
+          }
+        });
+      Assert.assertEquals(paths.size(), results.size());
+      for (int i = 0; i < paths.size(); ++i) {
+        Assert.assertTrue(results.get(i).isSuccess());
+        Assert.assertEquals(paths.get(i), results.get(i).getPath());
+        Assert.assertEquals(i + 1, (int)results.get(i).getValue());
+      }
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void closeCancelsRunningBatch() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch never = new CountDownLatch(1);
+    final BatchRdbParser batch = new BatchRdbParser(1);
+    // With a single thread, the other files are still queued when the batch parser is closed.
+    Thread closer = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            started.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          batch.close();
+        }
+      });
+    closer.start();
+    List<RdbFileResult<Void>> results = batch.parseAll(paths, new RdbFileTask<Void>() {
+        @Override
+        public Void parse(RdbHeader header, RdbParser parser) throws Exception {
+          started.countDown();
+          never.await();
+          return null;
+        }
+      });
+    closer.join();
+    Assert.assertEquals(paths.size(), results.size());
+    for (int i = 0; i < paths.size(); ++i) {
+      Assert.assertFalse(results.get(i).isSuccess());
+      Assert.assertEquals(paths.get(i), results.get(i).getPath());
+    }
+    for (int i = 1; i < paths.size(); ++i) {
+      Assert.assertTrue(results.get(i).getError() instanceof CancellationException);
+    }
+  }
+
+  @Test
+  public void parseAllAfterClose() throws Exception {
+    BatchRdbParser batch = new BatchRdbParser(1);
+    batch.close();
+    List<RdbFileResult<Void>> results = batch.parseAll(paths, new RdbFileTask<Void>() {
+        @Override
+        public Void parse(RdbHeader header, RdbParser parser) {
+          return null;
+        }
+      });
+    Assert.assertEquals(paths.size(), results.size());
+    for (RdbFileResult<Void> result : results) {
+      Assert.assertTrue(result.getError() instanceof CancellationException);
+    }
+  }
+}
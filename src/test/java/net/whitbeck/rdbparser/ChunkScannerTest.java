@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * The use and distribution terms for this software are covered by the Apache License 2.0
+ * (https://www.apache.org/licenses/LICENSE-2.0.txt) which can be found in the file al-v20.txt at
+ * the root of this distribution. By using this software in any fashion, you are agreeing to be
+ * bound by the terms of this license.
+ *
+ * You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChunkScannerTest {
+
+  private Path rdbFile;
+  private List<Entry> expected;
+
+  @Before
+  public void writeFile() throws Exception {
+    RdbFileBuilder rdb = new RdbFileBuilder(9);
+    for (int db = 0; db < 3; ++db) {
+      rdb.selectDb(db);
+      for (int i = 0; i < 50; ++i) {
+        rdb.write(0).string("key" + i).string("value" + db + "-" + i);
+      }
+    }
+    rdb.eof();
+    rdbFile = File.createTempFile("chunks", ".rdb").toPath();
+    Files.write(rdbFile, rdb.toByteArray());
+    try (RdbParser p = rdb.parser()) {
+      expected = RdbParserTest.readAll(p);
+    }
+  }
+
+  @After
+  public void deleteFile() throws Exception {
+    Files.deleteIfExists(rdbFile);
+  }
+
+  @Test
+  public void chunksCoverFile() throws Exception {
+    for (long chunkSize : new long[] {1, 40, 97, 1 << 20}) {
+      List<ChunkScanner.Chunk> chunks = ChunkScanner.scanAll(rdbFile, chunkSize);
+      Assert.assertNull(chunks.get(0).start);
+      Assert.assertFalse(chunks.get(0).midDb);
+      List<Entry> actual = new ArrayList<Entry>();
+      long offset = chunks.get(0).numBytes;
+      for (ChunkScanner.Chunk chunk : chunks) {
+        try (RdbParser p = RdbParser.memoryMapped(rdbFile)) {
+          if (chunk.start != null) {
+            Assert.assertEquals(offset, chunk.start.getOffset());
+            offset += chunk.numBytes;
+            p.resume(chunk.start);
+          }
+          for (int i = 0; i < chunk.numEntries; ++i) {
+            Entry entry = p.readNext();
+            if (i == 0 && chunk.start != null) {
+              Assert.assertEquals(chunk.midDb, entry.getType() != EntryType.SELECT_DB);
+            }
+            actual.add(entry);
+          }
+        }
+      }
+      Assert.assertEquals(Files.size(rdbFile), offset);
+      RdbParserTest.assertSameEntries(expected, actual);
+    }
+  }
+
+  @Test
+  public void parallelParserAndStream() throws Exception {
+    for (boolean ordered : new boolean[] {true, false}) {
+      try (ParallelRdbParser p = new ParallelRdbParser(rdbFile, 3, ordered, 97)) {
+        List<Entry> actual = new ArrayList<Entry>();
+        Entry e;
+        while ((e = p.readNext()) != null) {
+          actual.add(e);
+        }
+        if (ordered) {
+          RdbParserTest.assertSameEntries(expected, actual);
+        } else {
+          RdbParserTest.assertSameEntriesInAnyOrder(expected, actual);
+          Assert.assertEquals(RdbParserTest.keysWithDb(expected).size(),
+                              RdbParserTest.keysWithDb(actual).size());
+          Assert.assertTrue(RdbParserTest.keysWithDb(actual)
+                            .containsAll(RdbParserTest.keysWithDb(expected)));
+        }
+      }
+    }
+    try (Stream<Entry> stream = RdbParser.stream(rdbFile, 97)) {
+      RdbParserTest.assertSameEntries(expected,
+                                      stream.parallel().collect(Collectors.<Entry>toList()));
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * The use and distribution terms for this software are covered by the Apache License 2.0
+ * (https://www.apache.org/licenses/LICENSE-2.0.txt) which can be found in the file al-v20.txt at
+ * the root of this distribution. By using this software in any fashion, you are agreeing to be
+ * bound by the terms of this license.
+ *
+ * You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GzipBufferSourceTest {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  @Test
+  public void multiMemberSizes() throws Exception {
+    // Many small members, as written by pigz, plus members that need the speculative buffers to
+    // grow, or to reach the buffer size.
+    int[] memberSizes = new int[200];
+    for (int i = 0; i < memberSizes.length; ++i) {
+      memberSizes[i] = 10 + i;
+    }
+    memberSizes[50] = 40000;
+    memberSizes[100] = 5 * BUFFER_SIZE + 17;
+    Random random = new Random(42);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    File gzFile = File.createTempFile("multi", ".gz");
+    try {
+      try (FileOutputStream out = new FileOutputStream(gzFile)) {
+        for (int size : memberSizes) {
+          byte[] data = new byte[size];
+          for (int i = 0; i < size; ++i) {
+            // Compressible, but not trivially so.
+            data[i] = (byte)('a' + random.nextInt(4));
+          }
+          expected.write(data);
+          GZIPOutputStream gz = new GZIPOutputStream(out);
+          gz.write(data);
+          gz.finish();
+        }
+      }
+      for (int numThreads : new int[] {1, 4}) {
+        Path path = gzFile.toPath();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        int minArrayLength = Integer.MAX_VALUE;
+        try (GzipBufferSource source = new GzipBufferSource(
+            FileChannel.open(path, StandardOpenOption.READ), numThreads, BUFFER_SIZE)) {
+          ByteBuffer buf;
+          while ((buf = source.next()) != null) {
+            Assert.assertTrue(buf.array().length <= BUFFER_SIZE);
+            minArrayLength = Math.min(minArrayLength, buf.array().length);
+            actual.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+          }
+        }
+        Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        if (numThreads > 1) {
+          // Small speculatively inflated members do not each hold a full buffer.
+          Assert.assertTrue(minArrayLength < BUFFER_SIZE);
+        }
+      }
+    } finally {
+      gzFile.delete();
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * The use and distribution terms for this software are covered by the Apache License 2.0
+ * (https://www.apache.org/licenses/LICENSE-2.0.txt) which can be found in the file al-v20.txt at
+ * the root of this distribution. By using this software in any fashion, you are agreeing to be
+ * bound by the terms of this license.
+ *
+ * You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class HashFieldExpiryTest {
+
+  private static final long MIN_EXPIRE = 1700000000000L;
+
+  // The fields of the test hash and their expire times. The first field expires first, such that
+  // its relative expire time in the GA format is 1, and the second field has no expire time.
+  private static final String[] FIELDS = {"f1", "f2", "f3"};
+  private static final String[] VALUES = {"v1", "v2", "v3"};
+  private static final long[] EXPIRE_TIMES = {MIN_EXPIRE, 0, MIN_EXPIRE + 86400000L};
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private static RdbFileBuilder hashWithMetadata(boolean ga) {
+    RdbFileBuilder rdb = new RdbFileBuilder(12).selectDb(0).write(ga ? 24 : 22).string("hash");
+    if (ga) {
+      rdb.millis(MIN_EXPIRE);
+    }
+    rdb.length(FIELDS.length);
+    for (int i = 0; i < FIELDS.length; ++i) {
+      long expireTime = EXPIRE_TIMES[i];
+      if (ga && expireTime > 0) {
+        // Stored relative to the minimum expire time, plus one such that 0 still means none.
+        expireTime = expireTime - MIN_EXPIRE + 1;
+      }
+      rdb.length(expireTime).string(FIELDS[i]).string(VALUES[i]);
+    }
+    return rdb.eof();
+  }
+
+  private static RdbFileBuilder hashAsListpackEx(boolean ga) {
+    RdbFileBuilder rdb = new RdbFileBuilder(12).selectDb(0).write(ga ? 25 : 23).string("hash");
+    if (ga) {
+      rdb.millis(MIN_EXPIRE);
+    }
+    Object[] elements = new Object[3 * FIELDS.length];
+    for (int i = 0; i < FIELDS.length; ++i) {
+      elements[3 * i] = FIELDS[i];
+      elements[3 * i + 1] = VALUES[i];
+      elements[3 * i + 2] = EXPIRE_TIMES[i];
+    }
+    return rdb.string(ListpackListTest.listpack(elements)).eof();
+  }
+
+  private static KeyValuePair readHash(RdbFileBuilder rdb) throws Exception {
+    try (RdbParser p = rdb.parser()) {
+      Entry e;
+      while ((e = p.readNext()) != null) {
+        if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+          KeyValuePair kvp = (KeyValuePair)e;
+          kvp.realizeValues();
+          return kvp;
+        }
+      }
+    }
+    throw new AssertionError("No key/value pair.");
+  }
+
+  private static void assertValues(KeyValuePair kvp, ValueType valueType, boolean ga) {
+    Assert.assertEquals(valueType, kvp.getValueType());
+    Assert.assertEquals(ga ? MIN_EXPIRE : -1, kvp.getMinHashExpireTimeMillis());
+    List<String> expected = new ArrayList<String>();
+    for (int i = 0; i < FIELDS.length; ++i) {
+      expected.add(FIELDS[i]);
+      expected.add(VALUES[i]);
+      expected.add(Long.toString(EXPIRE_TIMES[i]));
+    }
+    List<String> actual = new ArrayList<String>();
+    for (byte[] value : kvp.getValues()) {
+      actual.add(new String(value, StandardCharsets.US_ASCII));
+    }
+    Assert.assertEquals(expected, actual);
+  }
+
+  private static void assertVisits(RdbFileBuilder rdb) throws Exception {
+    final List<String> fields = new ArrayList<String>();
+    final List<Long> expireTimes = new ArrayList<Long>();
+    try (RdbParser p = rdb.parser()) {
+      p.accept(new RdbVisitor() {
+          @Override
+          public void onHashField(byte[] field, byte[] value, long expireTime) {
+            fields.add(new String(field, StandardCharsets.US_ASCII));
+            expireTimes.add(expireTime);
+          }
+        });
+    }
+    Assert.assertEquals(Arrays.asList(FIELDS), fields);
+    Assert.assertEquals(Arrays.asList(MIN_EXPIRE, -1L, MIN_EXPIRE + 86400000L), expireTimes);
+  }
+
+  @Test
+  public void hashWithMetadata() throws Exception {
+    assertValues(readHash(hashWithMetadata(true)), ValueType.HASHMAP_WITH_METADATA, true);
+    assertVisits(hashWithMetadata(true));
+  }
+
+  @Test
+  public void hashWithMetadataPreGa() throws Exception {
+    // The pre-GA format stores absolute expire times.
+    assertValues(readHash(hashWithMetadata(false)), ValueType.HASHMAP_WITH_METADATA_PRE_GA,
+                 false);
+    assertVisits(hashWithMetadata(false));
+  }
+
+  @Test
+  public void hashAsListpackEx() throws Exception {
+    assertValues(readHash(hashAsListpackEx(true)), ValueType.HASHMAP_AS_LISTPACK_EX, true);
+    assertVisits(hashAsListpackEx(true));
+  }
+
+  @Test
+  public void hashAsListpackExPreGa() throws Exception {
+    assertValues(readHash(hashAsListpackEx(false)), ValueType.HASHMAP_AS_LISTPACK_EX_PRE_GA,
+                 false);
+    assertVisits(hashAsListpackEx(false));
+  }
+
+  private static void visitHashes(RdbFileBuilder rdb) throws Exception {
+    try (RdbParser p = rdb.parser()) {
+      p.accept(new RdbVisitor() {});
+    }
+  }
+
+  @Test
+  public void truncatedListpackEx() throws Exception {
+    // The last field has no value nor expire time.
+    RdbFileBuilder rdb = new RdbFileBuilder(12).selectDb(0).write(25).string("hash")
+        .millis(MIN_EXPIRE)
+        .string(ListpackListTest.listpack("f1", "v1", 0L, "f2"))
+        .eof();
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Truncated hash envelope");
+    visitHashes(rdb);
+  }
+
+  @Test
+  public void truncatedListpackHash() throws Exception {
+    // HASHMAP_AS_LISTPACK, whose last field has no value.
+    RdbFileBuilder rdb = new RdbFileBuilder(11).selectDb(0).write(16).string("hash")
+        .string(ListpackListTest.listpack("f1", "v1", "f2"))
+        .eof();
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Truncated hash envelope");
+    visitHashes(rdb);
+  }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * The use and distribution terms for this software are covered by the Apache License 2.0
+ * (https://www.apache.org/licenses/LICENSE-2.0.txt) which can be found in the file al-v20.txt at
+ * the root of this distribution. By using this software in any fashion, you are agreeing to be
+ * bound by the terms of this license.
+ *
+ * You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IntegerBytesTest {
+
+  private static String str(byte[] bytes) {
+    return new String(bytes, StandardCharsets.US_ASCII);
+  }
+
+  private static void assertFormats(long v) {
+    byte[] buf = new byte[IntegerBytes.MAX_LENGTH + 1];
+    String expected = Long.toString(v);
+    Assert.assertEquals(expected, str(IntegerBytes.format(v)));
+    Assert.assertEquals(expected.length(), IntegerBytes.length(v));
+    int len = IntegerBytes.format(v, buf, 1);
+    Assert.assertEquals(expected, str(Arrays.copyOfRange(buf, 1, 1 + len)));
+  }
+
+  @Test
+  public void boundaries() {
+    long[] values = new long[] {0, 1, -1, 12, 99, 100, -128, -129, 1023, 1024, 65535,
+                                Integer.MAX_VALUE, Integer.MIN_VALUE, 1L << 40, -(1L << 40),
+                                999999999999999999L, 1000000000000000000L,
+                                Long.MAX_VALUE, Long.MIN_VALUE};
+    for (long v : values) {
+      assertFormats(v);
+    }
+    long p = 1;
+    for (int i = 0; i < 19; ++i) {
+      assertFormats(p - 1);
+      assertFormats(p);
+      assertFormats(-p);
+      assertFormats(-p + 1);
+      p *= 10;
+    }
+  }
+
+  @Test
+  public void randomValues() {
+    Random rand = new Random(42);
+    for (int i = 0; i < 100000; ++i) {
+      assertFormats(rand.nextLong());
+      assertFormats(rand.nextInt());
+      assertFormats(rand.nextInt(4096) - 2048);
+    }
+  }
+
+  @Test
+  public void smallIntegersAreShared() {
+    for (long v = -128; v <= 1023; ++v) {
+      Assert.assertSame(IntegerBytes.format(v), IntegerBytes.format(v));
+    }
+    for (long v : new long[] {-129, 1024, 1L << 40}) {
+      Assert.assertNotSame(IntegerBytes.format(v), IntegerBytes.format(v));
+    }
+    // The packed encodings return the shared arrays too.
+    byte[] envelope = ListpackListTest.listpack(7L, "foo");
+    Assert.assertSame(IntegerBytes.format(7), new ListpackList(envelope).get(0));
+  }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * The use and distribution terms for this software are covered by the Apache License 2.0
+ * (https://www.apache.org/licenses/LICENSE-2.0.txt) which can be found in the file al-v20.txt at
+ * the root of this distribution. By using this software in any fashion, you are agreeing to be
+ * bound by the terms of this license.
+ *
+ * You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class KeyIndexTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private Path rdbFile;
+  private Path indexFile;
+
+  @Before
+  public void createFiles() throws Exception {
+    rdbFile = File.createTempFile("rdb", ".rdb").toPath();
+    indexFile = File.createTempFile("rdb", ".idx").toPath();
+  }
+
+  @After
+  public void deleteFiles() throws Exception {
+    Files.deleteIfExists(rdbFile);
+    Files.deleteIfExists(indexFile);
+  }
+
+  private static RdbFileBuilder firstKey() {
+    return new RdbFileBuilder(9).selectDb(0).write(0).string("k1").string("v1");
+  }
+
+  // Two keys and a zero, i.e., disabled, checksum.
+  private static byte[] twoKeys() {
+    return firstKey().write(0).string("k2").string("v2").eof().toByteArray();
+  }
+
+  private static byte[] withChecksum(byte[] rdb, long checksum) {
+    byte[] copy = Arrays.copyOf(rdb, rdb.length);
+    for (int i = 0; i < 8; ++i) {
+      copy[copy.length - 8 + i] = (byte)(checksum >> (8 * i));
+    }
+    return copy;
+  }
+
+  @Test
+  public void lookup() throws Exception {
+    Files.write(rdbFile, withChecksum(twoKeys(), 0x0123456789abcdefL));
+    KeyIndex.build(rdbFile, indexFile);
+    try (KeyIndex index = KeyIndex.open(rdbFile, indexFile)) {
+      Assert.assertEquals(2, index.size());
+      KeyValuePair kvp = index.lookup(0, "k2".getBytes(StandardCharsets.US_ASCII));
+      Assert.assertEquals("v2", new String(kvp.getValues().get(0), StandardCharsets.US_ASCII));
+      Assert.assertNull(index.lookup(1, "k2".getBytes(StandardCharsets.US_ASCII)));
+      Assert.assertNull(index.lookup(0, "k3".getBytes(StandardCharsets.US_ASCII)));
+    }
+  }
+
+  @Test
+  public void otherChecksum() throws Exception {
+    Files.write(rdbFile, withChecksum(twoKeys(), 1));
+    KeyIndex.build(rdbFile, indexFile);
+    Files.write(rdbFile, withChecksum(twoKeys(), 2));
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Key index does not match RDB file");
+    KeyIndex.open(rdbFile, indexFile);
+  }
+
+  @Test
+  public void otherSize() throws Exception {
+    Files.write(rdbFile, twoKeys());
+    KeyIndex.build(rdbFile, indexFile);
+    Files.write(rdbFile, firstKey().eof().toByteArray());
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Key index does not match RDB file");
+    KeyIndex.open(rdbFile, indexFile);
+  }
+
+  @Test
+  public void staleOffset() throws Exception {
+    byte[] rdb = twoKeys();
+    Files.write(rdbFile, rdb);
+    KeyIndex.build(rdbFile, indexFile);
+    // Same size and checksum, but the file ends where the second key used to be.
+    byte[] stale = firstKey().eof().toByteArray();
+    Files.write(rdbFile, Arrays.copyOf(stale, rdb.length));
+    try (KeyIndex index = KeyIndex.open(rdbFile, indexFile)) {
+      thrown.expect(IllegalStateException.class);
+      thrown.expectMessage("Key index does not match RDB file");
+      index.lookup(0, "k2".getBytes(StandardCharsets.US_ASCII));
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * The use and distribution terms for this software are covered by the Apache License 2.0
+ * (https://www.apache.org/licenses/LICENSE-2.0.txt) which can be found in the file al-v20.txt at
+ * the root of this distribution. By using this software in any fashion, you are agreeing to be
+ * bound by the terms of this license.
+ *
+ * You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ListpackListTest {
+
+  // Builds a listpack envelope, encoding Strings as strings and Longs as 7-bit, 13-bit, or 64-bit
+  // integers.
+  static byte[] listpack(Object... elements) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(0);
+    out.write(0);
+    out.write(0);
+    out.write(0);
+    out.write(elements.length & 0xff);
+    out.write(elements.length >> 8);
+    for (Object element : elements) {
+      ByteArrayOutputStream entry = new ByteArrayOutputStream();
+      if (element instanceof Long) {
+        long val = (Long)element;
+        if (val >= 0 && val < 128) {
+          entry.write((int)val);
+        } else if (val >= -4096 && val < 4096) {
+          entry.write(0xc0 | (int)(val >> 8) & 0x1f);
+          entry.write((int)val & 0xff);
+        } else {
+          entry.write(0xf4);
+          for (int shift = 0; shift < 64; shift += 8) {
+            entry.write((int)(val >> shift) & 0xff);
+          }
+        }
+      } else {
+        byte[] str = ((String)element).getBytes(StandardCharsets.US_ASCII);
+        if (str.length < 64) {
+          entry.write(0x80 | str.length);
+        } else if (str.length < 4096) {
+          entry.write(0xe0 | str.length >> 8);
+          entry.write(str.length & 0xff);
+        } else {
+          entry.write(0xf0);
+          entry.write(str.length & 0xff);
+          entry.write(str.length >> 8 & 0xff);
+          entry.write(str.length >> 16 & 0xff);
+          entry.write(str.length >> 24);
+        }
+        entry.write(str, 0, str.length);
+      }
+      byte[] bytes = entry.toByteArray();
+      out.write(bytes, 0, bytes.length);
+      writeBacklen(out, bytes.length);
+    }
+    out.write(0xff);
+    byte[] envelope = out.toByteArray();
+    envelope[0] = (byte)envelope.length;
+    envelope[1] = (byte)(envelope.length >> 8);
+    envelope[2] = (byte)(envelope.length >> 16);
+    return envelope;
+  }
+
+  // See lpEncodeBacklen in listpack.c.
+  private static void writeBacklen(ByteArrayOutputStream out, int len) {
+    if (len <= 127) {
+      out.write(len);
+    } else if (len < 16383) {
+      out.write(len >> 7);
+      out.write(len & 127 | 128);
+    } else {
+      out.write(len >> 14);
+      out.write(len >> 7 & 127 | 128);
+      out.write(len & 127 | 128);
+    }
+  }
+
+  static String repeat(char c, int n) {
+    char[] chars = new char[n];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+
+  private static void assertDecodes(byte[] envelope, Object... expected) {
+    List<byte[]> values = new ListpackList(envelope).realize();
+    Assert.assertEquals(expected.length, values.size());
+    ListpackList.Cursor cursor = new ListpackList.Cursor(envelope);
+    for (int i = 0; i < expected.length; ++i) {
+      Assert.assertEquals(expected[i].toString(),
+                          new String(values.get(i), StandardCharsets.US_ASCII));
+      Assert.assertTrue(cursor.next());
+      Assert.assertEquals(expected[i] instanceof Long, cursor.isInteger());
+      Assert.assertArrayEquals(values.get(i), cursor.getBytes());
+    }
+    Assert.assertFalse(cursor.next());
+  }
+
+  @Test
+  public void emptyStrings() {
+    assertDecodes(listpack("", 1L, "", ""), "", 1L, "", "");
+  }
+
+  @Test
+  public void backlenSizes() {
+    // The back-length covers the encoding bytes and the data, so strings of 126 and 127 bytes,
+    // whose 12-bit encoding takes two bytes, need two-byte back-lengths, and strings of 16378
+    // bytes or more, whose 32-bit encoding takes five bytes, need three-byte back-lengths.
+    for (int len : new int[] {62, 63, 64, 125, 126, 127, 128, 4095, 4096, 16377, 16378, 16379}) {
+      String str = repeat('x', len);
+      assertDecodes(listpack(str, -1000L, str, 7L), str, -1000L, str, 7L);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * The use and distribution terms for this software are covered by the Apache License 2.0
+ * (https://www.apache.org/licenses/LICENSE-2.0.txt) which can be found in the file al-v20.txt at
+ * the root of this distribution. By using this software in any fashion, you are agreeing to be
+ * bound by the terms of this license.
+ *
+ * You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class LzfTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private static String expand(byte[] src, int len) {
+    byte[] dest = new byte[len];
+    Lzf.expand(src, dest);
+    return new String(dest, StandardCharsets.US_ASCII);
+  }
+
+  @Test
+  public void literalsAndBackReferences() throws Exception {
+    // "abc", then 3 bytes 3 behind, then a run of 9 bytes 1 behind.
+    byte[] src = new byte[] {2, 'a', 'b', 'c', (byte)(1 << 5), 2, (byte)(7 << 5), 0, 0};
+    Assert.assertEquals("abcabcccccccccc", expand(src, 15));
+    // "ab", then a back reference of 10 bytes 2 behind, which overlaps the bytes it writes.
+    src = new byte[] {1, 'a', 'b', (byte)(7 << 5), 1, 1};
+    Assert.assertEquals("abababababab", expand(src, 12));
+  }
+
+  @Test
+  public void corruptInput() throws Exception {
+    // A literal run of 3 bytes followed by a back reference 8 bytes behind the start of the output.
+    byte[] src = new byte[] {2, 'a', 'b', 'c', (byte)(1 << 5), 10};
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Corrupt LZF data");
+    Lzf.expand(src, new byte[6]);
+  }
+
+  @Test
+  public void truncatedInput() throws Exception {
+    byte[] src = new byte[] {2, 'a', 'b', 'c', (byte)(1 << 5)};
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("truncated input");
+    Lzf.expand(src, new byte[6]);
+  }
+
+  @Test
+  public void trailingInput() throws Exception {
+    // The literal run fills the output, but is followed by another one.
+    byte[] src = new byte[] {2, 'a', 'b', 'c', 0, 'd'};
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("trailing input");
+    Lzf.expand(src, new byte[3]);
+  }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * The use and distribution terms for this software are covered by the Apache License 2.0
+ * (https://www.apache.org/licenses/LICENSE-2.0.txt) which can be found in the file al-v20.txt at
+ * the root of this distribution. By using this software in any fashion, you are agreeing to be
+ * bound by the terms of this license.
+ *
+ * You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QuickList2Test {
+
+  private static final String LARGE = ListpackListTest.repeat('x', 10000);
+
+  // A version 11 RDB file holding a single QUICKLIST_2 key, whose middle node is a PLAIN node.
+  private static RdbParser openParser() throws IOException {
+    return new RdbFileBuilder(11)
+        .selectDb(0)
+        .write(18) // QUICKLIST_2
+        .string("list")
+        .length(3) // number of nodes
+        .length(2) // PACKED
+        .string(ListpackListTest.listpack("a", 1L))
+        .length(QuickList2.CONTAINER_PLAIN)
+        .string(LARGE)
+        .length(2) // PACKED
+        .string(ListpackListTest.listpack(-1000L, "z"))
+        .eof()
+        .parser();
+  }
+
+  private static KeyValuePair readList(RdbParser p) throws Exception {
+    Entry e;
+    while ((e = p.readNext()) != null) {
+      if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+        return (KeyValuePair)e;
+      }
+    }
+    throw new AssertionError("No key/value pair.");
+  }
+
+  @Test
+  public void plainNodes() throws Exception {
+    try (RdbParser p = openParser()) {
+      KeyValuePair kvp = readList(p);
+      Assert.assertEquals(ValueType.QUICKLIST2, kvp.getValueType());
+      List<String> expected = Arrays.asList("a", "1", LARGE, "-1000", "z");
+      List<byte[]> values = kvp.getValues();
+      Assert.assertEquals(expected.size(), values.size());
+      for (int i = 0; i < expected.size(); ++i) {
+        Assert.assertEquals(expected.get(i), new String(values.get(i), StandardCharsets.US_ASCII));
+      }
+      ValueCursor cursor = kvp.getValueCursor();
+      boolean[] isInteger = {false, true, false, true, false};
+      for (int i = 0; i < expected.size(); ++i) {
+        Assert.assertTrue(cursor.next());
+        Assert.assertEquals(isInteger[i], cursor.isInteger());
+        Assert.assertEquals(expected.get(i),
+                            new String(cursor.getBytes(), StandardCharsets.US_ASCII));
+      }
+      Assert.assertFalse(cursor.next());
+      Assert.assertEquals(EntryType.EOF, p.readNext().getType());
+      Assert.assertNull(p.readNext());
+    }
+  }
+
+  @Test
+  public void plainNodeBytesAreCopies() throws Exception {
+    try (RdbParser p = openParser()) {
+      KeyValuePair kvp = readList(p);
+      for (int i = 0; i < 2; ++i) {
+        ValueCursor cursor = kvp.getValueCursor();
+        cursor.next();
+        cursor.next();
+        cursor.next();
+        byte[] bytes = cursor.getBytes();
+        Assert.assertEquals(LARGE, new String(bytes, StandardCharsets.US_ASCII));
+        // Modifying the returned array must not affect later reads.
+        Arrays.fill(bytes, (byte)'y');
+      }
+      Assert.assertEquals(LARGE, new String(kvp.getValues().get(2), StandardCharsets.US_ASCII));
+    }
+  }
+}
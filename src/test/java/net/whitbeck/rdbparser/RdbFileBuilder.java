@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * The use and distribution terms for this software are covered by the Apache License 2.0
+ * (https://www.apache.org/licenses/LICENSE-2.0.txt) which can be found in the file al-v20.txt at
+ * the root of this distribution. By using this software in any fashion, you are agreeing to be
+ * bound by the terms of this license.
+ *
+ * You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds small RDB files by hand, for tests of encodings that the test servers do not write.
+ */
+final class RdbFileBuilder {
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+  RdbFileBuilder(int version) {
+    write(String.format("REDIS%04d", version).getBytes(StandardCharsets.US_ASCII));
+  }
+
+  RdbFileBuilder write(int b) {
+    out.write(b);
+    return this;
+  }
+
+  RdbFileBuilder write(byte[] bytes) {
+    out.write(bytes, 0, bytes.length);
+    return this;
+  }
+
+  RdbFileBuilder selectDb(int db) {
+    return write(0xfe).length(db);
+  }
+
+  RdbFileBuilder length(long len) {
+    if (len < 1 << 6) {
+      return write((int)len);
+    } else if (len < 1 << 14) {
+      return write(0x40 | (int)(len >> 8)).write((int)len & 0xff);
+    } else if (len <= 0xffffffffL) {
+      write(0x80);
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        write((int)(len >> shift) & 0xff);
+      }
+      return this;
+    }
+    write(0x81);
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      write((int)(len >> shift) & 0xff);
+    }
+    return this;
+  }
+
+  // Expiration times are little-endian.
+  RdbFileBuilder millis(long time) {
+    for (int shift = 0; shift < 64; shift += 8) {
+      write((int)(time >> shift) & 0xff);
+    }
+    return this;
+  }
+
+  RdbFileBuilder string(byte[] str) {
+    return length(str.length).write(str);
+  }
+
+  RdbFileBuilder string(String str) {
+    return string(str.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  // Ends the file with a zero, i.e., disabled, checksum.
+  RdbFileBuilder eof() {
+    return write(0xff).write(new byte[8]);
+  }
+
+  byte[] toByteArray() {
+    return out.toByteArray();
+  }
+
+  RdbParser parser() throws IOException {
+    return new RdbParser(new ByteArrayInputStream(toByteArray()));
+  }
+}
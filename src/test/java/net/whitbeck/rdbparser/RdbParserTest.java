@@ -11,11 +11,24 @@
 
 package net.whitbeck.rdbparser;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -27,10 +40,16 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
@@ -578,6 +597,49 @@ public class RdbParserTest {
     }
   }
 
+  @Test
+  public void lzfRepeatedPatterns() throws Exception {
+    jedis.flushAll();
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 500; ++i) {
+      sb.append("abc");
+    }
+    for (int i = 0; i < 200; ++i) {
+      sb.append("key:").append(i % 17).append(':').append(i % 5 == 0 ? "zzzzzzzzzzzz" : "v");
+    }
+    String value = sb.toString();
+    jedis.set("foo", value);
+    jedis.save();
+    try (RdbParser p = openTestParser()) {
+      skipToFirstKeyValuePair(p);
+      KeyValuePair kvp = (KeyValuePair) p.readNext();
+      Assert.assertEquals(value, str(kvp.getValues().get(0)));
+    }
+  }
+
+  @Test
+  public void lzfDeferredDecompression() throws Exception {
+    jedis.flushAll();
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; ++i) {
+      sb.append("0123456789");
+    }
+    String value = sb.toString();
+    jedis.set("foo", value);
+    jedis.save();
+    try (RdbParser p = openTestParser()) {
+      skipToFirstKeyValuePair(p);
+      KeyValuePair kvp = (KeyValuePair) p.readNext();
+      Assert.assertNotNull(kvp.compressedValue);
+      Assert.assertTrue(kvp.getSerializedValueSize() < value.length());
+      Assert.assertEquals(value.length(), kvp.getRawValueLength());
+      Assert.assertNotNull(kvp.compressedValue);
+      Assert.assertEquals(value, str(kvp.getValues().get(0)));
+      Assert.assertNull(kvp.compressedValue);
+      Assert.assertEquals(value.length(), kvp.getRawValueLength());
+    }
+  }
+
   @Test
   public void list() throws Exception {
     jedis.flushAll();
@@ -758,6 +820,35 @@ public class RdbParserTest {
     }
   }
 
+  @Test
+  public void quickListManyNodes() throws Exception {
+    if (rdbVersion >= 7) {
+      jedis.flushAll();
+      int n = 20000;
+      String[] elements = new String[1000];
+      for (int i = 0; i < n; i += elements.length) {
+        for (int j = 0; j < elements.length; ++j) {
+          elements[j] = (i + j) % 3 == 0 ? "elem:" + (i + j) : Integer.toString(i + j);
+        }
+        jedis.rpush("foo", elements);
+      }
+      jedis.save();
+      try (RdbParser p = openTestParser()) {
+        skipToFirstKeyValuePair(p);
+        KeyValuePair kvp = (KeyValuePair) p.readNext();
+        List<byte[]> values = kvp.getValues();
+        // The size is summed from the node headers, and iteration decodes one node at a time.
+        Assert.assertEquals(n, values.size());
+        int i = 0;
+        for (byte[] val : values) {
+          Assert.assertEquals(i % 3 == 0 ? "elem:" + i : Integer.toString(i), str(val));
+          i += 1;
+        }
+        Assert.assertEquals(n, i);
+      }
+    }
+  }
+
   @Test
   public void intSet16Bit() throws Exception {
     Set<String> ints = new HashSet<String>();
@@ -1198,4 +1289,893 @@ public class RdbParserTest {
       restoreConfig("maxmemory-policy");
     }
   }
+
+  void populateMixedData() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 2000; ++i) {
+      sb.append("lorem ipsum ");
+    }
+    String longString = sb.toString();
+    jedis.flushAll();
+    for (int i = 0; i < 200; ++i) {
+      jedis.set("str:" + i, "val:" + i);
+      jedis.set("int:" + i, Integer.toString(i * 7919));
+      jedis.lpush("list:" + (i % 10), "elem:" + i, Integer.toString(i));
+      jedis.sadd("set:" + (i % 10), "elem:" + i);
+      jedis.sadd("intset:" + (i % 10), Integer.toString(i));
+      jedis.hset("hash:" + (i % 10), "field:" + i, "val:" + i);
+      jedis.zadd("zset:" + (i % 10), i * 1.5, "member:" + i);
+    }
+    jedis.set("long-string", longString);
+    jedis.lpush("long-list", longString, "foo", longString);
+    jedis.expireAt("str:0", 2000000000L);
+    jedis.select(1);
+    jedis.set("foo", "bar");
+    jedis.hset("hash", "field", longString);
+    jedis.select(0);
+  }
+
+  // Populates the server with mixed data, saves it, and returns the entries of the dump file.
+  List<Entry> saveMixedData() throws Exception {
+    populateMixedData();
+    jedis.save();
+    try (RdbParser p = openTestParser()) {
+      return readAll(p);
+    }
+  }
+
+  static List<Entry> readAll(RdbParser p) throws IOException {
+    List<Entry> entries = new ArrayList<Entry>();
+    Entry e;
+    while ((e = p.readNext()) != null) {
+      entries.add(e);
+    }
+    return entries;
+  }
+
+  static void assertSameEntry(Entry expected, Entry actual) throws Exception {
+    Assert.assertNotNull(actual);
+    Assert.assertEquals(expected.toString(), actual.toString());
+    if (expected.getType() == EntryType.KEY_VALUE_PAIR) {
+      KeyValuePair ekvp = (KeyValuePair) expected;
+      KeyValuePair akvp = (KeyValuePair) actual;
+      Assert.assertArrayEquals(ekvp.getKey(), akvp.getKey());
+      Assert.assertEquals(ekvp.getValueType(), akvp.getValueType());
+      Assert.assertEquals(ekvp.getExpireTime(), akvp.getExpireTime());
+      List<byte[]> evals = ekvp.getValues();
+      List<byte[]> avals = akvp.getValues();
+      Assert.assertEquals(evals.size(), avals.size());
+      for (int i = 0; i < evals.size(); ++i) {
+        Assert.assertArrayEquals(evals.get(i), avals.get(i));
+      }
+    }
+  }
+
+  static void assertSameEntries(RdbParser expected, RdbParser actual) throws Exception {
+    Entry e;
+    while ((e = expected.readNext()) != null) {
+      assertSameEntry(e, actual.readNext());
+    }
+    Assert.assertNull(actual.readNext());
+    Assert.assertEquals(expected.bytesParsed(), actual.bytesParsed());
+  }
+
+  static void assertSameEntries(List<Entry> expected, List<Entry> actual) throws Exception {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); ++i) {
+      assertSameEntry(expected.get(i), actual.get(i));
+    }
+  }
+
+  // Indexes key/value pairs by database and key, and other entries (except SelectDb entries) by
+  // their string representation.
+  static Map<String, Entry> indexEntries(List<Entry> entries) throws Exception {
+    Map<String, Entry> index = new HashMap<String, Entry>();
+    long db = -1;
+    for (Entry e : entries) {
+      if (e.getType() == EntryType.SELECT_DB) {
+        db = ((SelectDb) e).getId();
+      } else if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+        Assert.assertNull(index.put(db + ":" + str(((KeyValuePair) e).getKey()), e));
+      } else {
+        Assert.assertNull(index.put(e.toString(), e));
+      }
+    }
+    return index;
+  }
+
+  // Checks that the key/value pairs are the same, and belong to the same databases, regardless of
+  // the order in which they were returned.
+  static void assertSameEntriesInAnyOrder(List<Entry> expected, List<Entry> actual)
+      throws Exception {
+    Map<String, Entry> expectedIndex = indexEntries(expected);
+    Map<String, Entry> actualIndex = indexEntries(actual);
+    Assert.assertEquals(expectedIndex.keySet(), actualIndex.keySet());
+    for (Map.Entry<String, Entry> e : expectedIndex.entrySet()) {
+      assertSameEntry(e.getValue(), actualIndex.get(e.getKey()));
+    }
+  }
+
+  @Test
+  public void memoryMapped() throws Exception {
+    populateMixedData();
+    jedis.save();
+    // Use a tiny window so that many entries span two mapped windows.
+    try (RdbParser expected = openTestParser();
+         RdbParser actual = RdbParser.memoryMapped(dumpFile.toPath(), 61)) {
+      assertSameEntries(expected, actual);
+    }
+  }
+
+  @Test
+  public void readAhead() throws Exception {
+    populateMixedData();
+    jedis.save();
+    try (RdbParser expected = openTestParser();
+         RdbParser actual = RdbParser.readAhead(new FileInputStream(dumpFile), 3, 127)) {
+      assertSameEntries(expected, actual);
+    }
+  }
+
+  @Test
+  public void zeroCopy() throws Exception {
+    populateMixedData();
+    jedis.save();
+    for (RdbParser actual : Arrays.asList(openTestParser(),
+                                          RdbParser.memoryMapped(dumpFile.toPath(), 61))) {
+      actual.setZeroCopy(true);
+      try (RdbParser expected = openTestParser()) {
+        Entry e;
+        while ((e = expected.readNext()) != null) {
+          Entry a = actual.readNext();
+          Assert.assertEquals(e.getType(), a.getType());
+          if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+            KeyValuePair ekvp = (KeyValuePair) e;
+            KeyValuePair akvp = (KeyValuePair) a;
+            Assert.assertTrue(akvp.getKeySlice().contentEquals(ekvp.getKey()));
+            Assert.assertEquals(Arrays.hashCode(ekvp.getKey()), akvp.getKeySlice().hashCode());
+            Assert.assertEquals(ekvp.getRawValue(), akvp.getRawValue());
+            // Outside of zero-copy mode, the slice is created on first access and then kept.
+            Assert.assertSame(ekvp.getRawValue(), ekvp.getRawValue());
+            Assert.assertEquals(ekvp.getRawValue() == null ? -1 : ekvp.getRawValue().length(),
+                                ekvp.getRawValueLength());
+            ByteSlice keyCopy = akvp.getKeySlice().copy();
+            Assert.assertArrayEquals(ekvp.getKey(), akvp.getKey());
+            Assert.assertArrayEquals(ekvp.getKey(), keyCopy.toByteArray());
+          }
+        }
+      } finally {
+        actual.close();
+      }
+    }
+  }
+
+  @Test
+  public void reuseEntries() throws Exception {
+    populateMixedData();
+    jedis.save();
+    List<String> expected = new ArrayList<String>();
+    try (RdbParser p = openTestParser()) {
+      Entry e;
+      while ((e = p.readNext()) != null) {
+        if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+          expected.add(describe((KeyValuePair)e));
+        }
+      }
+    }
+    for (boolean zeroCopy : new boolean[] {false, true}) {
+      List<String> actual = new ArrayList<String>();
+      KeyValuePair reused = null;
+      try (RdbParser p = RdbParser.memoryMapped(dumpFile.toPath())) {
+        p.setReuseEntries(true);
+        p.setZeroCopy(zeroCopy);
+        Entry e;
+        while ((e = p.readNext()) != null) {
+          if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+            if (reused == null) {
+              reused = (KeyValuePair)e;
+            }
+            Assert.assertSame(reused, e);
+            actual.add(describe((KeyValuePair)e));
+          }
+        }
+      }
+      Assert.assertEquals(expected, actual);
+    }
+  }
+
+  private static String describe(KeyValuePair kvp) throws Exception {
+    StringBuilder sb = new StringBuilder();
+    sb.append(str(kvp.getKey())).append(' ').append(kvp.getValueType());
+    sb.append(' ').append(kvp.getExpireTimeMillis()).append(' ').append(kvp.getExpireTime());
+    for (byte[] val : kvp.getValues()) {
+      sb.append(' ').append(str(val));
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void visitor() throws Exception {
+    populateMixedData();
+    jedis.save();
+    final Map<String, Integer> expected = new HashMap<String, Integer>();
+    try (RdbParser p = openTestParser()) {
+      Entry e;
+      while ((e = p.readNext()) != null) {
+        if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+          KeyValuePair kvp = (KeyValuePair)e;
+          expected.put(str(kvp.getKey()), kvp.getValues().size());
+        }
+      }
+    }
+    final Map<String, Integer> actual = new HashMap<String, Integer>();
+    final List<String> longList = new ArrayList<String>();
+    final Map<String, Double> zset0 = new HashMap<String, Double>();
+    final int[] numEofs = new int[1];
+    try (RdbParser p = openTestParser()) {
+      p.accept(new RdbVisitor() {
+          private String key;
+          private int count;
+
+          @Override
+          public void onKeyStart(KeyValuePair kvp) {
+            Assert.assertNull(kvp.getValues());
+            key = new String(kvp.getKey());
+            count = 0;
+          }
+
+          @Override
+          public void onValue(byte[] value) {
+            count += 1;
+          }
+
+          @Override
+          public void onListElement(byte[] element) {
+            count += 1;
+            if (key.equals("long-list")) {
+              longList.add(new String(element));
+            }
+          }
+
+          @Override
+          public void onSetMember(byte[] member) {
+            count += 1;
+          }
+
+          @Override
+          public void onZsetMember(byte[] member, double score) {
+            count += 2;
+            if (key.equals("zset:0")) {
+              zset0.put(new String(member), score);
+            }
+          }
+
+          @Override
+          public void onHashField(byte[] field, byte[] value, long expireTime) {
+            Assert.assertEquals(-1, expireTime);
+            count += 2;
+          }
+
+          @Override
+          public void onKeyEnd(KeyValuePair kvp) {
+            actual.put(key, count);
+          }
+
+          @Override
+          public void onEof(Eof eof) {
+            numEofs[0] += 1;
+          }
+        });
+    }
+    Assert.assertEquals(expected, actual);
+    Assert.assertEquals(3, longList.size());
+    Assert.assertEquals("foo", longList.get(1));
+    Assert.assertEquals(20, zset0.size());
+    Assert.assertEquals(15.0, zset0.get("member:10"), 0.0);
+    Assert.assertEquals(1, numEofs[0]);
+  }
+
+  @Test
+  public void keysOnly() throws Exception {
+    populateMixedData();
+    jedis.save();
+    try (RdbParser expected = openTestParser();
+         RdbParser actual = openTestParser()) {
+      actual.setKeysOnly(true);
+      Entry e;
+      while ((e = expected.readNext()) != null) {
+        Entry a = actual.readNext();
+        Assert.assertEquals(e.getType(), a.getType());
+        if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+          KeyValuePair ekvp = (KeyValuePair) e;
+          KeyValuePair akvp = (KeyValuePair) a;
+          Assert.assertArrayEquals(ekvp.getKey(), akvp.getKey());
+          Assert.assertEquals(ekvp.getValueType(), akvp.getValueType());
+          Assert.assertEquals(ekvp.getExpireTime(), akvp.getExpireTime());
+          Assert.assertEquals(ekvp.getSerializedValueSize(), akvp.getSerializedValueSize());
+          Assert.assertNull(akvp.getValues());
+        } else {
+          Assert.assertEquals(e.toString(), a.toString());
+        }
+      }
+      Assert.assertNull(actual.readNext());
+      Assert.assertEquals(expected.bytesParsed(), actual.bytesParsed());
+    }
+  }
+
+  @Test
+  public void filter() throws Exception {
+    populateMixedData();
+    jedis.save();
+    final byte[] prefix = bytes("str:1");
+    EntryFilter filter = new EntryFilter() {
+        @Override
+        public boolean accept(long db, ByteSlice key, ValueType valueType) {
+          return db == 0 && key.startsWith(prefix) && valueType == ValueType.VALUE;
+        }
+      };
+    Set<String> expectedKeys = new HashSet<String>();
+    try (RdbParser p = openTestParser()) {
+      long db = 0;
+      Entry e;
+      while ((e = p.readNext()) != null) {
+        if (e.getType() == EntryType.SELECT_DB) {
+          db = ((SelectDb) e).getId();
+        } else if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+          KeyValuePair kvp = (KeyValuePair) e;
+          if (filter.accept(db, kvp.getKeySlice(), kvp.getValueType())) {
+            expectedKeys.add(str(kvp.getKey()));
+          }
+        }
+      }
+    }
+    Assert.assertEquals(111, expectedKeys.size()); // str:1, str:10-19, and str:100-199
+    Set<String> keys = new HashSet<String>();
+    try (RdbParser p = openTestParser()) {
+      p.setFilter(filter);
+      Entry e;
+      while ((e = p.readNext()) != null) {
+        if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+          KeyValuePair kvp = (KeyValuePair) e;
+          String key = str(kvp.getKey());
+          Assert.assertEquals(key.replace("str:", "val:"), str(kvp.getValues().get(0)));
+          keys.add(key);
+        }
+      }
+    }
+    Assert.assertEquals(expectedKeys, keys);
+  }
+
+  @Test
+  public void checkpointAndResume() throws Exception {
+    populateMixedData();
+    jedis.save();
+    List<String> entries = new ArrayList<String>();
+    try (RdbParser p = openTestParser()) {
+      Entry e;
+      while ((e = p.readNext()) != null) {
+        entries.add(e.toString());
+      }
+    }
+    for (int n : new int[] {1, entries.size() / 3, entries.size() - 5, entries.size()}) {
+      Checkpoint checkpoint;
+      try (RdbParser p = openTestParser()) {
+        for (int i = 0; i < n; ++i) {
+          p.readNext();
+        }
+        checkpoint = p.checkpoint();
+        Assert.assertEquals(rdbVersion, checkpoint.getRdbVersion());
+      }
+      // Persisting a checkpoint only requires its three components.
+      checkpoint = new Checkpoint(checkpoint.getOffset(), checkpoint.getRdbVersion(),
+                                  checkpoint.getDb());
+      for (RdbParser p : Arrays.asList(openTestParser(),
+                                       RdbParser.memoryMapped(dumpFile.toPath()))) {
+        try {
+          p.resume(checkpoint);
+          // Resuming after the EOF entry returns the EOF entry again.
+          int i = Math.min(n, entries.size() - 1);
+          Entry e;
+          while ((e = p.readNext()) != null) {
+            Assert.assertEquals(entries.get(i++), e.toString());
+          }
+          Assert.assertEquals(entries.size(), i);
+        } finally {
+          p.close();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void keyIndex() throws Exception {
+    populateMixedData();
+    jedis.save();
+    Map<String, String> expected = new HashMap<String, String>();
+    List<String> keys = new ArrayList<String>();
+    List<Long> dbs = new ArrayList<Long>();
+    try (RdbParser p = openTestParser()) {
+      long db = 0;
+      Entry e;
+      while ((e = p.readNext()) != null) {
+        if (e.getType() == EntryType.SELECT_DB) {
+          db = ((SelectDb)e).getId();
+        } else if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+          String key = str(((KeyValuePair)e).getKey());
+          keys.add(key);
+          dbs.add(db);
+          expected.put(db + ":" + key, e.toString());
+        }
+      }
+    }
+    File indexFile = File.createTempFile("rdb", ".idx");
+    try {
+      KeyIndex.build(dumpFile.toPath(), indexFile.toPath());
+      try (KeyIndex index = KeyIndex.open(dumpFile.toPath(), indexFile.toPath())) {
+        Assert.assertEquals(keys.size(), index.size());
+        for (int i = 0; i < keys.size(); ++i) {
+          KeyValuePair kvp = index.lookup(dbs.get(i), bytes(keys.get(i)));
+          Assert.assertEquals(expected.get(dbs.get(i) + ":" + keys.get(i)), kvp.toString());
+        }
+        Assert.assertNull(index.lookup(0, bytes("no-such-key")));
+        Assert.assertNull(index.lookup(dbs.get(0) + 5, bytes(keys.get(0))));
+      }
+    } finally {
+      indexFile.delete();
+    }
+  }
+
+  @Test
+  public void parallelParse() throws Exception {
+    List<Entry> expected = saveMixedData();
+    for (boolean ordered : new boolean[] {true, false}) {
+      try (ParallelRdbParser p = new ParallelRdbParser(dumpFile.toPath(), 3, ordered, 97)) {
+        List<Entry> actual = new ArrayList<Entry>();
+        Entry e;
+        while ((e = p.readNext()) != null) {
+          actual.add(e);
+        }
+        if (ordered) {
+          assertSameEntries(expected, actual);
+        } else {
+          // Unordered mode repeats SelectDb entries at chunk boundaries, such that each key is
+          // still attributed to its database.
+          assertSameEntriesInAnyOrder(expected, actual);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void pipelinedParse() throws Exception {
+    List<Entry> expected = saveMixedData();
+    for (int depth : new int[] {1, 64}) {
+      try (PipelinedRdbParser p = new PipelinedRdbParser(openTestParser(), depth)) {
+        List<Entry> actual = new ArrayList<Entry>();
+        Entry e;
+        while ((e = p.readNext()) != null) {
+          actual.add(e);
+        }
+        assertSameEntries(expected, actual);
+        Assert.assertNull(p.readNext());
+      }
+    }
+    // Enabling zero-copy mode on the underlying parser after construction fails the next read.
+    RdbParser parser = openTestParser();
+    try (PipelinedRdbParser p = new PipelinedRdbParser(parser, 1)) {
+      parser.setZeroCopy(true);
+      thrown.expect(IllegalStateException.class);
+      thrown.expectMessage("Zero-copy parsers cannot be pipelined");
+      while (p.readNext() != null) {}
+    }
+  }
+
+  @Test
+  public void streamParse() throws Exception {
+    List<Entry> expected = saveMixedData();
+    try (RdbParser p = openTestParser()) {
+      assertSameEntries(expected, p.stream().collect(Collectors.<Entry>toList()));
+    }
+    for (boolean parallel : new boolean[] {false, true}) {
+      try (Stream<Entry> stream = RdbParser.stream(dumpFile.toPath(), 97)) {
+        assertSameEntries(expected,
+                          (parallel ? stream.parallel() : stream).collect(Collectors.<Entry>toList()));
+      }
+    }
+    try (Stream<Entry> stream = RdbParser.stream(dumpFile.toPath(), 97)) {
+      Assert.assertEquals(expected.size(), stream.parallel().count());
+    }
+    // Keys must follow the SelectDb entry of their database, even when chunks are parsed on
+    // different threads.
+    final List<Entry> actual = new ArrayList<Entry>();
+    try (Stream<Entry> stream = RdbParser.stream(dumpFile.toPath(), 97)) {
+      stream.parallel().forEachOrdered(new Consumer<Entry>() {
+          @Override
+          public void accept(Entry e) {
+            actual.add(e);
+          }
+        });
+    }
+    Assert.assertEquals(keysWithDb(expected), keysWithDb(actual));
+  }
+
+  // Returns the keys of the key/value pairs, in order, prefixed with their database.
+  static List<String> keysWithDb(List<Entry> entries) throws Exception {
+    List<String> keys = new ArrayList<String>();
+    long db = -1;
+    for (Entry e : entries) {
+      if (e.getType() == EntryType.SELECT_DB) {
+        db = ((SelectDb) e).getId();
+      } else if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+        keys.add(db + ":" + str(((KeyValuePair) e).getKey()));
+      }
+    }
+    return keys;
+  }
+
+  @Test
+  public void batchParse() throws Exception {
+    populateMixedData();
+    jedis.save();
+    int expected = 0;
+    try (RdbParser p = openTestParser()) {
+      Entry e;
+      while ((e = p.readNext()) != null) {
+        if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+          expected += 1;
+        }
+      }
+    }
+    File corruptFile = File.createTempFile("corrupt", ".rdb");
+    try {
+      Files.write(corruptFile.toPath(), "REDIS0011garbage".getBytes("ASCII"));
+      List<Path> paths = Arrays.asList(dumpFile.toPath(), corruptFile.toPath(),
+                                       new File("does-not-exist.rdb").toPath(),
+                                       dumpFile.toPath());
+      try (BatchRdbParser batch = new BatchRdbParser(2)) {
+        List<RdbFileResult<Integer>> results = batch.parseAll(paths, new RdbFileTask<Integer>() {
+            @Override
+            public Integer parse(RdbHeader header, RdbParser parser) throws Exception {
+              Assert.assertTrue(header.getRdbVersion() >= 1);
+              parser.setKeysOnly(true);
+              int numKeys = 0;
+              Entry e;
+              while ((e = parser.readNext()) != null) {
+                Assert.assertNotEquals(EntryType.AUX_FIELD, e.getType());
+                if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+                  numKeys += 1;
+                }
+              }
+              return numKeys;
+            }
+          });
+        Assert.assertEquals(4, results.size());
+        for (int i : new int[] {0, 3}) {
+          RdbFileResult<Integer> result = results.get(i);
+          Assert.assertTrue(result.isSuccess());
+          Assert.assertEquals(expected, (int)result.getValue());
+          Assert.assertEquals(dumpFile.toPath(), result.getHeader().getPath());
+        }
+        Assert.assertFalse(results.get(1).isSuccess());
+        Assert.assertEquals(11, results.get(1).getHeader().getRdbVersion());
+        Assert.assertTrue(results.get(1).getHeader().getAuxFields().isEmpty());
+        Assert.assertFalse(results.get(2).isSuccess());
+        Assert.assertNull(results.get(2).getHeader());
+      }
+    } finally {
+      corruptFile.delete();
+    }
+  }
+
+  private static void readUntil(InputStream in, String suffix) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < suffix.length()
+           || !sb.substring(sb.length() - suffix.length()).equals(suffix)) {
+      int b = in.read();
+      if (b < 0) {
+        throw new IOException("Unexpected end of stream.");
+      }
+      sb.append((char)b);
+    }
+  }
+
+  @Test
+  public void replicationPayload() throws Exception {
+    List<Entry> expected = saveMixedData();
+    final byte[] rdb = Files.readAllBytes(dumpFile.toPath());
+    final String mark = "0123456789abcdef0123456789abcdef01234567";
+    for (final boolean diskless : new boolean[] {true, false}) {
+      // A stand-in master that replays a full resynchronization in small writes, such that the
+      // end-of-payload mark straddles several reads, followed by the start of the command stream.
+      final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+      final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+      Thread master = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try (Socket socket = server.accept()) {
+              InputStream in = socket.getInputStream();
+              OutputStream out = socket.getOutputStream();
+              readUntil(in, "psync2\r\n");
+              out.write("+OK\r\n".getBytes("ASCII"));
+              readUntil(in, "-1\r\n");
+              ByteArrayOutputStream stream = new ByteArrayOutputStream();
+              stream.write("+FULLRESYNC 8de1787ba490483314a4d30f1c628bc5025eb761 0\r\n\n\n"
+                           .getBytes("ASCII"));
+              stream.write((diskless ? "$EOF:" + mark : "$" + rdb.length).getBytes("ASCII"));
+              stream.write("\r\n".getBytes("ASCII"));
+              stream.write(rdb);
+              if (diskless) {
+                stream.write(mark.getBytes("ASCII"));
+              }
+              stream.write("*1\r\n$4\r\nPING\r\n".getBytes("ASCII"));
+              byte[] bytes = stream.toByteArray();
+              for (int i = 0; i < bytes.length; i += 13) {
+                out.write(bytes, i, Math.min(13, bytes.length - i));
+                out.flush();
+              }
+            } catch (Throwable t) {
+              error.set(t);
+            }
+          }
+        });
+      master.start();
+      try {
+        InetSocketAddress address =
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        try (RdbParser p = RdbParser.fullResync(SocketChannel.open(address), null)) {
+          assertSameEntries(expected, readAll(p));
+        }
+      } finally {
+        master.join();
+        server.close();
+      }
+      Assert.assertNull(error.get());
+    }
+  }
+
+  @Test
+  public void gzip() throws Exception {
+    List<Entry> expected = saveMixedData();
+    byte[] dump = Files.readAllBytes(dumpFile.toPath());
+    File gzFile = File.createTempFile("dump", ".rdb.gz");
+    try {
+      // Write one gzip member per 1000 bytes, as pigz-style multi-member files.
+      try (FileOutputStream out = new FileOutputStream(gzFile)) {
+        for (int i = 0; i < dump.length; i += 1000) {
+          GZIPOutputStream gz = new GZIPOutputStream(out);
+          gz.write(dump, i, Math.min(1000, dump.length - i));
+          gz.finish();
+        }
+      }
+      for (RdbParser p : Arrays.asList(RdbParser.gzip(gzFile.toPath(), 1),
+                                       RdbParser.gzip(gzFile.toPath(), 3),
+                                       RdbParser.gzip(new FileInputStream(gzFile)))) {
+        try {
+          assertSameEntries(expected, readAll(p));
+        } finally {
+          p.close();
+        }
+      }
+    } finally {
+      gzFile.delete();
+    }
+  }
+
+  @Test
+  public void perEntryAllocation() throws Exception {
+    ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(mx instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threadMx = (com.sun.management.ThreadMXBean)mx;
+    Assume.assumeTrue(threadMx.isThreadAllocatedMemorySupported());
+    threadMx.setThreadAllocatedMemoryEnabled(true);
+    populateMixedData();
+    jedis.save();
+    long tid = Thread.currentThread().getId();
+    long bytesPerEntry = 0;
+    for (int i = 0; i < 3; ++i) { // the first passes warm up the JIT
+      try (RdbParser p = RdbParser.memoryMapped(dumpFile.toPath())) {
+        p.setKeysOnly(true);
+        p.setZeroCopy(true);
+        p.readNext(); // maps the file
+        long numEntries = 0;
+        long before = threadMx.getThreadAllocatedBytes(tid);
+        while (p.readNext() != null) {
+          numEntries += 1;
+        }
+        bytesPerEntry = (threadMx.getThreadAllocatedBytes(tid) - before) / numEntries;
+      }
+    }
+    // Only the entry and its key slice should be allocated; reading lengths, integers and
+    // expiration times must not allocate.
+    Assert.assertTrue("Allocated " + bytesPerEntry + " bytes per entry", bytesPerEntry < 128);
+    for (int i = 0; i < 3; ++i) {
+      try (RdbParser p = RdbParser.memoryMapped(dumpFile.toPath())) {
+        p.readNext(); // maps the file
+        long numEntries = 0;
+        long payload = 0;
+        long before = threadMx.getThreadAllocatedBytes(tid);
+        Entry e;
+        while ((e = p.readNext()) != null) {
+          numEntries += 1;
+          if (e.getType() == EntryType.KEY_VALUE_PAIR) {
+            KeyValuePair kvp = (KeyValuePair)e;
+            payload += kvp.getKey().length + kvp.getRawValueLength();
+          }
+        }
+        bytesPerEntry = (threadMx.getThreadAllocatedBytes(tid) - before - payload) / numEntries;
+      }
+    }
+    // In default mode, the key and raw value are copied out of the buffer, but apart from them only
+    // the entry itself should be allocated. Values are not decoded until accessed.
+    Assert.assertTrue("Allocated " + bytesPerEntry + " bytes per entry on top of keys and values",
+                      bytesPerEntry < 256);
+  }
+
+  @Test
+  public void streamingIteration() throws Exception {
+    populateMixedData();
+    jedis.save();
+    try (RdbParser p = openTestParser()) {
+      Entry e;
+      while ((e = p.readNext()) != null) {
+        if (e.getType() != EntryType.KEY_VALUE_PAIR) {
+          continue;
+        }
+        List<byte[]> values = ((KeyValuePair)e).getValues();
+        // The size comes from the encoding header and the first pass decodes the values one at a
+        // time. Indexed access then realizes the list.
+        int size = values.size();
+        List<byte[]> streamed = new ArrayList<byte[]>();
+        for (byte[] value : values) {
+          streamed.add(value);
+        }
+        Assert.assertEquals(size, streamed.size());
+        for (int i = 0; i < size; ++i) {
+          Assert.assertArrayEquals(streamed.get(i), values.get(i));
+        }
+        Assert.assertEquals(size, values.size());
+      }
+    }
+  }
+
+  @Test
+  public void valueCursor() throws Exception {
+    populateMixedData();
+    jedis.save();
+    int numIntegers = 0;
+    try (RdbParser p = openTestParser()) {
+      Entry e;
+      while ((e = p.readNext()) != null) {
+        if (e.getType() != EntryType.KEY_VALUE_PAIR) {
+          continue;
+        }
+        KeyValuePair kvp = (KeyValuePair)e;
+        String key = str(kvp.getKey());
+        ValueCursor cursor = kvp.getValueCursor();
+        Iterator<byte[]> values = kvp.getValues().iterator();
+        while (cursor.next()) {
+          byte[] value = values.next();
+          Assert.assertArrayEquals(value, cursor.getBytes());
+          if (cursor.isInteger()) {
+            Assert.assertEquals(Long.parseLong(str(value)), cursor.getLong());
+            numIntegers += 1;
+          } else if (key.startsWith("int:") || key.startsWith("intset:")) {
+            Assert.fail("Expected an integer value for " + key);
+          }
+        }
+        Assert.assertFalse(values.hasNext());
+      }
+    }
+    Assert.assertTrue(numIntegers >= 400);
+  }
+
+  @Test
+  public void valueCursorUnpackedEncodings() throws Exception {
+    // Large enough to be saved with the unpacked SET and HASH (and, on older versions, LIST)
+    // encodings, whose elements are individually integer-encoded strings.
+    for (int i = 0; i < 1000; ++i) {
+      jedis.rpush("list", Integer.toString(i - 500));
+      jedis.sadd("set", Integer.toString(i - 500));
+      jedis.hset("hash", "field" + i, Integer.toString(i - 500));
+    }
+    jedis.sadd("set", "member");
+    jedis.save();
+    try (RdbParser p = openTestParser()) {
+      Entry e;
+      while ((e = p.readNext()) != null) {
+        if (e.getType() != EntryType.KEY_VALUE_PAIR) {
+          continue;
+        }
+        KeyValuePair kvp = (KeyValuePair)e;
+        ValueCursor cursor = kvp.getValueCursor();
+        Iterator<byte[]> values = kvp.getValues().iterator();
+        while (cursor.next()) {
+          byte[] value = values.next();
+          Assert.assertArrayEquals(value, cursor.getBytes());
+          String s = str(value);
+          if (s.startsWith("field") || s.equals("member")) {
+            Assert.assertFalse(cursor.isInteger());
+          } else {
+            Assert.assertTrue("Expected an integer value in " + str(kvp.getKey()),
+                              cursor.isInteger());
+            Assert.assertEquals(Long.parseLong(s), cursor.getLong());
+          }
+        }
+        Assert.assertFalse(values.hasNext());
+      }
+    }
+  }
+
+  @Test
+  public void intSetValues() throws Exception {
+    populateMixedData();
+    jedis.save();
+    int numIntSets = 0;
+    try (RdbParser p = openTestParser()) {
+      Entry e;
+      while ((e = p.readNext()) != null) {
+        if (e.getType() != EntryType.KEY_VALUE_PAIR) {
+          continue;
+        }
+        KeyValuePair kvp = (KeyValuePair)e;
+        if (kvp.getValueType() != ValueType.INTSET) {
+          Assert.assertNull(kvp.getIntSetValues());
+          continue;
+        }
+        numIntSets += 1;
+        long[] expected = new long[kvp.getValues().size()];
+        for (int i = 0; i < expected.length; ++i) {
+          expected[i] = Long.parseLong(str(kvp.getValues().get(i)));
+        }
+        Arrays.sort(expected);
+        Assert.assertArrayEquals(expected, kvp.getIntSetValues());
+        for (long v : expected) {
+          Assert.assertTrue(kvp.intSetContains(v));
+          Assert.assertFalse(kvp.intSetContains(v + 1000));
+        }
+        Assert.assertFalse(kvp.intSetContains(-1));
+      }
+    }
+    Assert.assertEquals(10, numIntSets);
+  }
+
+  @Test
+  public void sortedSetCursor() throws Exception {
+    populateMixedData();
+    jedis.zadd("zset:inf", Double.POSITIVE_INFINITY, "pos");
+    jedis.zadd("zset:inf", Double.NEGATIVE_INFINITY, "neg");
+    jedis.zadd("zset:inf", 0.1, "tenth");
+    jedis.save();
+    int numMembers = 0;
+    try (RdbParser p = openTestParser()) {
+      Entry e;
+      while ((e = p.readNext()) != null) {
+        if (e.getType() != EntryType.KEY_VALUE_PAIR) {
+          continue;
+        }
+        KeyValuePair kvp = (KeyValuePair)e;
+        SortedSetCursor cursor = kvp.getSortedSetCursor();
+        if (!str(kvp.getKey()).startsWith("zset:")) {
+          Assert.assertNull(cursor);
+          continue;
+        }
+        List<byte[]> values = kvp.getValues();
+        for (int i = 0; i < values.size(); i += 2) {
+          Assert.assertTrue(cursor.next());
+          Assert.assertArrayEquals(values.get(i), cursor.getMember().toByteArray());
+          double score = kvp.getValueType() == ValueType.SORTED_SET2
+              ? RdbParser.parseSortedSet2Score(values.get(i + 1))
+              : RdbParser.parseSortedSetScore(values.get(i + 1));
+          Assert.assertEquals(score, cursor.getScore(), 0.0);
+          if (str(values.get(i)).startsWith("member:")) {
+            int n = Integer.parseInt(str(values.get(i)).substring("member:".length()));
+            Assert.assertEquals(n * 1.5, cursor.getScore(), 0.0);
+          }
+          numMembers += 1;
+        }
+        Assert.assertFalse(cursor.next());
+      }
+    }
+    Assert.assertEquals(203, numMembers);
+  }
 }
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * The use and distribution terms for this software are covered by the Apache License 2.0
+ * (https://www.apache.org/licenses/LICENSE-2.0.txt) which can be found in the file al-v20.txt at
+ * the root of this distribution. By using this software in any fashion, you are agreeing to be
+ * bound by the terms of this license.
+ *
+ * You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class RdbPublisherTest {
+
+  private static ExecutorService executor;
+
+  @BeforeClass
+  public static void startExecutor() {
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  @AfterClass
+  public static void stopExecutor() {
+    executor.shutdown();
+  }
+
+  // Two databases of strings, lists, and sets, some with expire times.
+  private static RdbParser openParser() throws Exception {
+    RdbFileBuilder rdb = new RdbFileBuilder(9);
+    for (int db = 0; db < 2; ++db) {
+      rdb.selectDb(db);
+      for (int i = 0; i < 100; ++i) {
+        if (i % 10 == 0) {
+          rdb.write(0xfc).millis(1700000000000L + i); // EXPIRETIME_MS
+        }
+        rdb.write(i % 3).string("key:" + i); // STRING, LIST, or SET
+        if (i % 3 == 0) {
+          rdb.string("value:" + i);
+        } else {
+          rdb.length(i);
+          for (int j = 0; j < i; ++j) {
+            rdb.string("element:" + j);
+          }
+        }
+      }
+    }
+    return rdb.eof().parser();
+  }
+
+  // RdbPublisher is compiled into the Java 11 layer of the jar, which the tests, compiled for Java
+  // 8, cannot reference directly.
+  @SuppressWarnings("unchecked")
+  private static Flow.Publisher<Entry> publisher(RdbParser parser, int batchSize)
+      throws Exception {
+    return (Flow.Publisher<Entry>)Class.forName("net.whitbeck.rdbparser.RdbPublisher")
+        .getConstructor(RdbParser.class, Executor.class, int.class)
+        .newInstance(parser, executor, batchSize);
+  }
+
+  // Requests entries requestSize at a time, and cancels the subscription after cancelAfter entries
+  // if it is positive.
+  private static final class CollectingSubscriber implements Flow.Subscriber<Entry> {
+    final List<Entry> entries = new ArrayList<Entry>();
+    final CountDownLatch done = new CountDownLatch(1);
+    final long requestSize;
+    final int cancelAfter;
+    Flow.Subscription subscription;
+    Throwable error;
+    boolean completed = false;
+
+    CollectingSubscriber(long requestSize, int cancelAfter) {
+      this.requestSize = requestSize;
+      this.cancelAfter = cancelAfter;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(requestSize);
+    }
+
+    @Override
+    public void onNext(Entry entry) {
+      entries.add(entry);
+      if (entries.size() == cancelAfter) {
+        subscription.cancel();
+        done.countDown();
+      } else if (entries.size() % requestSize == 0) {
+        subscription.request(requestSize);
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      error = t;
+      done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+      done.countDown();
+    }
+
+    void await() throws Exception {
+      Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void publishesAllEntries() throws Exception {
+    List<Entry> expected;
+    try (RdbParser p = openParser()) {
+      expected = RdbParserTest.readAll(p);
+    }
+    for (int batchSize : new int[] {1, 4, 1000}) {
+      CollectingSubscriber subscriber = new CollectingSubscriber(3, -1);
+      publisher(openParser(), batchSize).subscribe(subscriber);
+      subscriber.await();
+      Assert.assertNull(subscriber.error);
+      Assert.assertTrue(subscriber.completed);
+      RdbParserTest.assertSameEntries(expected, subscriber.entries);
+    }
+  }
+
+  @Test
+  public void cancel() throws Exception {
+    List<Entry> expected;
+    try (RdbParser p = openParser()) {
+      expected = RdbParserTest.readAll(p);
+    }
+    CollectingSubscriber subscriber = new CollectingSubscriber(3, 5);
+    publisher(openParser(), 4).subscribe(subscriber);
+    subscriber.await();
+    // Give the publisher a chance to emit entries past the cancellation.
+    Thread.sleep(100);
+    Assert.assertNull(subscriber.error);
+    Assert.assertFalse(subscriber.completed);
+    RdbParserTest.assertSameEntries(expected.subList(0, 5), subscriber.entries);
+  }
+
+  @Test
+  public void nonPositiveRequest() throws Exception {
+    CollectingSubscriber subscriber = new CollectingSubscriber(0, -1);
+    publisher(openParser(), 4).subscribe(subscriber);
+    subscriber.await();
+    Assert.assertTrue(subscriber.error instanceof IllegalArgumentException);
+    Assert.assertTrue(subscriber.entries.isEmpty());
+  }
+
+  @Test
+  public void singleSubscriber() throws Exception {
+    Flow.Publisher<Entry> publisher = publisher(openParser(), 4);
+    CollectingSubscriber first = new CollectingSubscriber(Long.MAX_VALUE, -1);
+    publisher.subscribe(first);
+    CollectingSubscriber second = new CollectingSubscriber(Long.MAX_VALUE, -1);
+    publisher.subscribe(second);
+    second.await();
+    Assert.assertTrue(second.error instanceof IllegalStateException);
+    first.await();
+    Assert.assertNull(first.error);
+    Assert.assertTrue(first.completed);
+  }
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * The use and distribution terms for this software are covered by the Apache License 2.0
+ * (https://www.apache.org/licenses/LICENSE-2.0.txt) which can be found in the file al-v20.txt at
+ * the root of this distribution. By using this software in any fashion, you are agreeing to be
+ * bound by the terms of this license.
+ *
+ * You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class ReplicationBufferSourceTest {
+
+  private static final String MARK = "0123456789abcdef0123456789abcdef01234567";
+  private static final String COMMAND_STREAM = "*1\r\n$4\r\nPING\r\n";
+
+  // Larger than the read buffer of ReplicationBufferSource, such that it wraps around.
+  private static byte[] rdb;
+  private static List<Entry> expected;
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @BeforeClass
+  public static void buildRdb() throws Exception {
+    RdbFileBuilder builder = new RdbFileBuilder(9).selectDb(0);
+    for (int i = 0; i < 3000; ++i) {
+      builder.write(0).string("key" + i).string("value-" + i + "-" + repeat('v', i % 100));
+    }
+    rdb = builder.eof().toByteArray();
+    Assert.assertTrue(rdb.length > 64 * 1024);
+    try (RdbParser p = builder.parser()) {
+      expected = RdbParserTest.readAll(p);
+    }
+  }
+
+  private static String repeat(char c, int n) {
+    StringBuilder sb = new StringBuilder(n);
+    for (int i = 0; i < n; ++i) {
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * A blocking channel that replays a fixed input, returning at most the given number of bytes per
+   * read, and records everything written to it. The last chunk size is used for all further reads.
+   */
+  private static final class FakeChannel implements ByteChannel {
+
+    private final byte[] input;
+    private final int[] chunkSizes;
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    private int pos = 0;
+    private int numReads = 0;
+    private boolean open = true;
+
+    FakeChannel(byte[] input, int... chunkSizes) {
+      this.input = input;
+      this.chunkSizes = chunkSizes;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) {
+      if (pos == input.length) {
+        return -1;
+      }
+      int chunkSize = chunkSizes[Math.min(numReads, chunkSizes.length - 1)];
+      int n = Math.min(Math.min(chunkSize, dst.remaining()), input.length - pos);
+      dst.put(input, pos, n);
+      pos += n;
+      numReads += 1;
+      return n;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+      int n = src.remaining();
+      while (src.hasRemaining()) {
+        written.write(src.get());
+      }
+      return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public void close() {
+      open = false;
+    }
+
+    String written() {
+      return new String(written.toByteArray(), StandardCharsets.US_ASCII);
+    }
+  }
+
+  private static byte[] concat(String prefix, byte[] payload, String suffix) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] prefixBytes = prefix.getBytes(StandardCharsets.US_ASCII);
+    byte[] suffixBytes = suffix.getBytes(StandardCharsets.US_ASCII);
+    out.write(prefixBytes, 0, prefixBytes.length);
+    out.write(payload, 0, payload.length);
+    out.write(suffixBytes, 0, suffixBytes.length);
+    return out.toByteArray();
+  }
+
+  private static byte[] disklessInput() {
+    return concat("\n\n$EOF:" + MARK + "\r\n", rdb, MARK + COMMAND_STREAM);
+  }
+
+  private static byte[] lengthInput() {
+    return lengthInput("\n\n");
+  }
+
+  private static byte[] lengthInput(String replies) {
+    return concat(replies + "$" + rdb.length + "\r\n", rdb, COMMAND_STREAM);
+  }
+
+  // Checks both the bytes handed out by the source, which must be exactly those of the RDB file,
+  // and the entries parsed from them. The parser alone stops at the end of the RDB file and would
+  // not notice stray bytes of the mark.
+  private static void assertPayload(byte[] input, int... chunkSizes) throws Exception {
+    ReplicationBufferSource source =
+        new ReplicationBufferSource(new FakeChannel(input, chunkSizes));
+    source.readPayloadHeader();
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    ByteBuffer buf;
+    while ((buf = source.next()) != null) {
+      while (buf.hasRemaining()) {
+        payload.write(buf.get());
+      }
+    }
+    Assert.assertArrayEquals(rdb, payload.toByteArray());
+    FakeChannel ch = new FakeChannel(input, chunkSizes);
+    try (RdbParser p = RdbParser.replicationPayload(ch)) {
+      RdbParserTest.assertSameEntries(expected, RdbParserTest.readAll(p));
+    }
+    Assert.assertFalse(ch.isOpen());
+  }
+
+  @Test
+  public void disklessPayload() throws Exception {
+    for (int chunkSize : new int[] {1, 7, 39, 40, 41, 1000, 1 << 20}) {
+      assertPayload(disklessInput(), chunkSize);
+    }
+  }
+
+  @Test
+  public void disklessPayloadMarkSplits() throws Exception {
+    // Reads of 1000 bytes, which always fit in the read buffer, up to a read that ends at every
+    // offset within the trailing mark, or right before or after it.
+    byte[] input = disklessInput();
+    int markStart = input.length - COMMAND_STREAM.length() - ReplicationBufferSource.MARK_LENGTH;
+    for (int split = -1; split <= ReplicationBufferSource.MARK_LENGTH + 1; ++split) {
+      for (int chunkSize : new int[] {1, 13, 1000}) {
+        int head = markStart + split;
+        int numFullReads = head / 1000;
+        int lastRead = head % 1000;
+        int[] chunkSizes = new int[numFullReads + (lastRead > 0 ? 2 : 1)];
+        Arrays.fill(chunkSizes, 1000);
+        if (lastRead > 0) {
+          chunkSizes[numFullReads] = lastRead;
+        }
+        chunkSizes[chunkSizes.length - 1] = chunkSize;
+        assertPayload(input, chunkSizes);
+      }
+    }
+  }
+
+  @Test
+  public void lengthPayload() throws Exception {
+    for (int chunkSize : new int[] {1, 7, 39, 40, 41, 1000, 1 << 20}) {
+      assertPayload(lengthInput(), chunkSize);
+    }
+  }
+
+  @Test
+  public void truncatedDisklessPayload() throws Exception {
+    byte[] input = concat("$EOF:" + MARK + "\r\n", rdb, MARK.substring(0, 20));
+    try (RdbParser p = RdbParser.replicationPayload(new FakeChannel(input, 1000))) {
+      thrown.expect(IOException.class);
+      thrown.expectMessage("Connection closed before the end of the RDB payload.");
+      RdbParserTest.readAll(p);
+    }
+  }
+
+  @Test
+  public void invalidPayloadHeader() throws Exception {
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Unexpected RDB payload header: +OK");
+    RdbParser.replicationPayload(new FakeChannel(lengthInput("+OK\r\n"), 1));
+  }
+
+  private static String command(String... args) {
+    StringBuilder sb = new StringBuilder("*" + args.length + "\r\n");
+    for (String arg : args) {
+      sb.append("$").append(arg.length()).append("\r\n").append(arg).append("\r\n");
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void fullResyncWithAuth() throws Exception {
+    String replies = "+OK\r\n+OK\r\n\n+FULLRESYNC 8de1787ba490483314a4d30f1c628bc5025eb761 0\r\n\n";
+    FakeChannel ch = new FakeChannel(lengthInput(replies), 7);
+    try (RdbParser p = RdbParser.fullResync(ch, "secret")) {
+      RdbParserTest.assertSameEntries(expected, RdbParserTest.readAll(p));
+    }
+    Assert.assertEquals(command("AUTH", "secret")
+                        + command("REPLCONF", "capa", "eof", "capa", "psync2")
+                        + command("PSYNC", "?", "-1"),
+                        ch.written());
+  }
+
+  @Test
+  public void fullResyncWithoutAuth() throws Exception {
+    String replies = "+OK\r\n+FULLRESYNC 8de1787ba490483314a4d30f1c628bc5025eb761 0\r\n";
+    FakeChannel ch = new FakeChannel(lengthInput(replies), 1 << 20);
+    try (RdbParser p = RdbParser.fullResync(ch, null)) {
+      RdbParserTest.assertSameEntries(expected, RdbParserTest.readAll(p));
+    }
+    Assert.assertEquals(command("REPLCONF", "capa", "eof", "capa", "psync2")
+                        + command("PSYNC", "?", "-1"),
+                        ch.written());
+  }
+
+  @Test
+  public void fullResyncAuthFailure() throws Exception {
+    FakeChannel ch = new FakeChannel(lengthInput("-WRONGPASS invalid password\r\n"), 1 << 20);
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Unexpected reply to AUTH: -WRONGPASS invalid password");
+    try {
+      RdbParser.fullResync(ch, "wrong");
+    } finally {
+      Assert.assertEquals(command("AUTH", "wrong"), ch.written());
+    }
+  }
+
+  @Test
+  public void fullResyncPsyncFailure() throws Exception {
+    FakeChannel ch = new FakeChannel(lengthInput("+OK\r\n-NOMASTERLINK\r\n"), 1 << 20);
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Unexpected reply to PSYNC: -NOMASTERLINK");
+    RdbParser.fullResync(ch, null);
+  }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * The use and distribution terms for this software are covered by the Apache License 2.0
+ * (https://www.apache.org/licenses/LICENSE-2.0.txt) which can be found in the file al-v20.txt at
+ * the root of this distribution. By using this software in any fashion, you are agreeing to be
+ * bound by the terms of this license.
+ *
+ * You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StringListTest {
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static StringList mixed() {
+    StringList list = new StringList(4);
+    list.addInteger(-7);
+    list.addString(bytes("a"));
+    list.addInteger(1234567890123L);
+    list.addString(bytes("b"));
+    return list;
+  }
+
+  @Test
+  public void cursor() {
+    ValueCursor cursor = mixed().cursor();
+    Assert.assertTrue(cursor.next());
+    Assert.assertTrue(cursor.isInteger());
+    Assert.assertEquals(-7, cursor.getLong());
+    Assert.assertArrayEquals(bytes("-7"), cursor.getBytes());
+    Assert.assertTrue(cursor.next());
+    Assert.assertFalse(cursor.isInteger());
+    Assert.assertArrayEquals(bytes("a"), cursor.getBytes());
+    Assert.assertTrue(cursor.next());
+    Assert.assertEquals(1234567890123L, cursor.getLong());
+    Assert.assertTrue(cursor.next());
+    Assert.assertArrayEquals(bytes("b"), cursor.getBytes());
+    Assert.assertFalse(cursor.next());
+  }
+
+  @Test
+  public void integersFormattedOnce() {
+    StringList list = mixed();
+    Assert.assertEquals(4, list.size());
+    byte[] first = list.get(2);
+    Assert.assertArrayEquals(bytes("1234567890123"), first);
+    Assert.assertSame(first, list.get(2));
+    ValueCursor cursor = list.cursor();
+    cursor.next();
+    cursor.next();
+    cursor.next();
+    Assert.assertSame(first, cursor.getBytes());
+    Assert.assertEquals(Arrays.asList("-7", "a", "1234567890123", "b"), strings(list));
+  }
+
+  private static List<String> strings(List<byte[]> values) {
+    String[] strs = new String[values.size()];
+    for (int i = 0; i < strs.length; ++i) {
+      strs[i] = new String(values.get(i), StandardCharsets.US_ASCII);
+    }
+    return Arrays.asList(strs);
+  }
+
+  @Test
+  public void parsedList() throws Exception {
+    // A LIST of integer-encoded strings (8, 16 and 32-bit) and a plain string.
+    RdbFileBuilder rdb = new RdbFileBuilder(9).selectDb(0).write(1).string("list").length(4)
+        .write(0xc0).write(0xf9)
+        .write(0xc1).write(0x39).write(0x30)
+        .write(0xc2).write(0x00).write(0x00).write(0x00).write(0x80)
+        .string("x");
+    try (RdbParser p = rdb.eof().parser()) {
+      Assert.assertEquals(EntryType.SELECT_DB, p.readNext().getType());
+      KeyValuePair kvp = (KeyValuePair)p.readNext();
+      ValueCursor cursor = kvp.getValueCursor();
+      long[] ints = {-7, 12345, Integer.MIN_VALUE};
+      for (long i : ints) {
+        Assert.assertTrue(cursor.next());
+        Assert.assertTrue(cursor.isInteger());
+        Assert.assertEquals(i, cursor.getLong());
+      }
+      Assert.assertTrue(cursor.next());
+      Assert.assertFalse(cursor.isInteger());
+      Assert.assertFalse(cursor.next());
+      Assert.assertEquals(Arrays.asList("-7", "12345", "-2147483648", "x"),
+                          strings(kvp.getValues()));
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2015-2021 John Whitbeck. All rights reserved.
+ *
+ * The use and distribution terms for this software are covered by the Apache License 2.0
+ * (https://www.apache.org/licenses/LICENSE-2.0.txt) which can be found in the file al-v20.txt at
+ * the root of this distribution. By using this software in any fashion, you are agreeing to be
+ * bound by the terms of this license.
+ *
+ * You must not remove this notice, or any other, from this software.
+ */
+
+package net.whitbeck.rdbparser;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ZipMapTest {
+
+  // Builds a zipmap envelope from alternating keys and values, with the given number of free bytes
+  // after each value.
+  static byte[] zipMap(int free, String... kvs) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(kvs.length / 2);
+    for (int i = 0; i < kvs.length; ++i) {
+      byte[] str = kvs[i].getBytes(StandardCharsets.US_ASCII);
+      if (str.length < 254) {
+        out.write(str.length);
+      } else {
+        // 254 followed by the length as a 32-bit little-endian integer.
+        out.write(254);
+        out.write(str.length & 0xff);
+        out.write(str.length >> 8 & 0xff);
+        out.write(str.length >> 16 & 0xff);
+        out.write(str.length >> 24);
+      }
+      boolean isValue = i % 2 == 1;
+      if (isValue) {
+        out.write(free);
+      }
+      out.write(str, 0, str.length);
+      if (isValue) {
+        out.write(new byte[free], 0, free);
+      }
+    }
+    out.write(255);
+    return out.toByteArray();
+  }
+
+  private static void assertDecodes(byte[] envelope, String... kvs) {
+    List<byte[]> values = new ZipMap(envelope);
+    Assert.assertEquals(kvs.length, values.size());
+    int i = 0;
+    for (byte[] value : values) {
+      Assert.assertEquals(kvs[i++], new String(value, StandardCharsets.US_ASCII));
+    }
+    for (i = 0; i < kvs.length; ++i) {
+      Assert.assertEquals(kvs[i], new String(values.get(i), StandardCharsets.US_ASCII));
+    }
+  }
+
+  @Test
+  public void shortStrings() {
+    assertDecodes(zipMap(0, "foo", "bar", "hello", "world"), "foo", "bar", "hello", "world");
+    assertDecodes(zipMap(3, "foo", "bar", "", ""), "foo", "bar", "", "");
+  }
+
+  @Test
+  public void longStrings() {
+    // Strings of up to 253 bytes have a single-byte length, longer ones a 5-byte length.
+    for (int len : new int[] {252, 253, 254, 255, 300, 70000}) {
+      String str = ListpackListTest.repeat('x', len);
+      assertDecodes(zipMap(0, str, "value", "field", str, "foo", "bar"),
+                    str, "value", "field", str, "foo", "bar");
+      assertDecodes(zipMap(4, "field", str, str, str), "field", str, str, str);
+    }
+  }
+}